@@ -0,0 +1,41 @@
+plugins {
+    id("java")
+    id("org.jetbrains.intellij.platform.module")
+    id("me.champeau.jmh")
+}
+
+java {
+    toolchain.languageVersion.set(JavaLanguageVersion.of(17))
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+repositories {
+    mavenCentral()
+    intellijPlatform { defaultRepositories() }
+}
+
+dependencies {
+    intellijPlatform {
+        create(
+            providers.gradleProperty("platformType").get(),
+            providers.gradleProperty("platformVersion").get()
+        )
+        bundledPlugin("Git4Idea")
+    }
+    implementation(project(":"))
+}
+
+// ./gradlew :benchmarks:jmh  ->  benchmarks/build/results/jmh/results.json
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    jvmArgsAppend.add("-Djava.awt.headless=true")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    providers.gradleProperty("jmhInclude").orNull?.let { includes.add(it) }
+}
+
+tasks.withType<JavaCompile> { options.encoding = "UTF-8" }
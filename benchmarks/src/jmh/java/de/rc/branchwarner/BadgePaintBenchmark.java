@@ -0,0 +1,61 @@
+package de.rc.branchwarner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/** Painting and measuring {@link EditorOverlayInstaller.LiveBadgeCorner} into a headless image. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BadgePaintBenchmark {
+
+    @Param({"1", "3"})
+    public int scale;
+
+    /** 1.0 for a regular screen, 2.0 for HiDPI. */
+    @Param({"1.0", "2.0"})
+    public double deviceScale;
+
+    private EditorOverlayInstaller.LiveBadgeCorner badge;
+    private BufferedImage target;
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() {
+        badge = new EditorOverlayInstaller.LiveBadgeCorner("PRODUCTION", scale);
+        badge.setFont(new Font(Font.DIALOG, Font.PLAIN, 13));
+        badge.setSize(badge.getPreferredSize());
+
+        target = new BufferedImage((int) Math.ceil(badge.getWidth() * deviceScale),
+                (int) Math.ceil(badge.getHeight() * deviceScale), BufferedImage.TYPE_INT_ARGB);
+        g = target.createGraphics();
+        g.scale(deviceScale, deviceScale);
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        badge.paint(g);
+        return target;
+    }
+
+    @Benchmark
+    public Dimension preferredSize() {
+        return badge.getPreferredSize();
+    }
+}
@@ -0,0 +1,76 @@
+package de.rc.branchwarner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-lookup cost of the warn-branch matcher as the configured list grows, compared
+ * with the comma-split / equalsIgnoreCase loop it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BranchMatcherBenchmark {
+
+    @Param({"3", "30", "300", "3000"})
+    public int patternCount;
+
+    /** {@code literal}: exact names only; {@code mixed}: a third each of names, globs and regexes. */
+    @Param({"literal", "mixed"})
+    public String kind;
+
+    private String spec;
+    private BranchMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        List<String> entries = new ArrayList<>(patternCount);
+        for (int i = 0; i < patternCount; i++) {
+            if ("literal".equals(kind) || i % 3 == 0) {
+                entries.add("branch-" + i);
+            } else if (i % 3 == 1) {
+                entries.add("release-" + i + "/*");
+            } else {
+                entries.add("^deploy-" + i + "-[a-z]+$");
+            }
+        }
+        entries.add("prod");
+        spec = String.join(",", entries);
+        matcher = BranchMatcher.compile(spec);
+    }
+
+    @Benchmark
+    public boolean compiledHit() {
+        return matcher.matches("prod");
+    }
+
+    @Benchmark
+    public boolean compiledMiss() {
+        return matcher.matches("feature/JIRA-1234-some-work");
+    }
+
+    @Benchmark
+    public BranchMatcher compile() {
+        return BranchMatcher.compile(spec);
+    }
+
+    /** The pre-matcher implementation of isWarnBranch, literals only. */
+    @Benchmark
+    public boolean legacySplitMiss() {
+        String branch = "feature/JIRA-1234-some-work";
+        for (String t : spec.split(",")) {
+            if (t.trim().equalsIgnoreCase(branch)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,272 @@
+package de.rc.branchwarner;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Branch-switch storms against the shared pipeline: {@code repos} repositories each
+ * switch branch {@code switchesPerRepo} times in a row, as a checkout script, an
+ * interactive rebase or a meta-repo tool would. HEAD is written the way git writes it
+ * ({@code HEAD.lock}, then rename) and each write is reported to the
+ * {@link BranchWarnerCoordinator} exactly as {@link GitFileWatcher} would.
+ * <p>
+ * Three measurements of the same storm, all reported by JMH:
+ * <ul>
+ *   <li>{@link #storm}: from the first HEAD write until every badge shows the branch written
+ *   last, sampled for p50/p99;</li>
+ *   <li>{@link #lastWriteToBadge}: the storm is written in the invocation setup, so only the
+ *   time from the last write to the final badge is sampled;</li>
+ *   <li>{@link #writeThroughput}: whole storms, with the HEAD writes counted as an
+ *   {@link AuxCounters} secondary result in writes per second.</li>
+ * </ul>
+ * A storm that does not settle, or settles with a badge that differs from the last written
+ * branch, fails the run.
+ * <p>
+ * Everything below the service is the production code: the real coordinator with its
+ * {@link HeadReader}, {@link WatchedGitPaths} lookup, scheduler and IO pool, the same
+ * {@link RecomputeCoalescer} delay, and {@link BadgeStateTable#diffShown}. Only
+ * {@link BranchStateService} itself needs a live project and EDT, so each project is stood in
+ * for by {@link StormProject}: it subscribes like the service, reads heads with
+ * {@link BranchWarnerCoordinator#heads} and maps them to badges the way the service does,
+ * into a map that plays the role of the screen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BranchStormBenchmark {
+
+    private static final long SETTLE_TIMEOUT_MS = 10_000;
+    /** Warn branches; storms end alternately on a matched and an unmatched branch. */
+    private static final BranchMatcher MATCHER = BranchMatcher.compile("prod,release/*");
+    private static final String[] BRANCHES = {"prod", "feature/storm", "release/2.1", "main"};
+
+    @Param({"1", "10", "50"})
+    public int repos;
+
+    @Param({"1", "20"})
+    public int switchesPerRepo;
+
+    /**
+     * {@code flat}: independent sibling repositories, one project each.
+     * {@code worktrees}: one repository with linked worktrees, all in a single project.
+     */
+    @Param({"flat", "worktrees"})
+    public String layout;
+
+    private Path dir;
+    private BranchWarnerCoordinator coordinator;
+    private final List<StormProject> projects = new ArrayList<>();
+    /** HEAD file of each git directory. */
+    private final Map<Path, Path> headFiles = new LinkedHashMap<>();
+    private int round;
+
+    /** A storm already written and reported to the coordinator; only its settling is measured. */
+    @State(Scope.Thread)
+    public static class WrittenStorm {
+        Map<Path, BadgeState> expected;
+
+        @Setup(Level.Invocation)
+        public void write(BranchStormBenchmark bench) throws IOException {
+            expected = bench.expected(bench.writeStorm());
+        }
+    }
+
+    /** HEAD writes, reported by JMH per second of storm. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Writes {
+        public long headWrites;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bw-storm-bench");
+        coordinator = new BranchWarnerCoordinator();
+
+        List<Path> gitDirs = new ArrayList<>();
+        if (layout.equals("worktrees")) {
+            Path mainGit = Files.createDirectories(dir.resolve("main/.git"));
+            Files.createDirectories(mainGit.resolve("refs/heads"));
+            gitDirs.add(mainGit);
+            for (int i = 1; i < repos; i++) {
+                Path wtGit = Files.createDirectories(mainGit.resolve("worktrees/wt" + i));
+                Files.writeString(wtGit.resolve("commondir"), "../..\n");
+                Path wt = Files.createDirectories(dir.resolve("wt" + i));
+                Files.writeString(wt.resolve(".git"), "gitdir: " + wtGit + "\n");
+                gitDirs.add(wtGit);
+            }
+        } else {
+            for (int i = 0; i < repos; i++) {
+                Path gitDir = Files.createDirectories(dir.resolve("repo" + i + "/.git"));
+                Files.createDirectories(gitDir.resolve("refs/heads"));
+                gitDirs.add(gitDir);
+            }
+        }
+        for (Path gitDir : gitDirs) {
+            Path head = gitDir.resolve("HEAD");
+            writeHead(head, "main");
+            headFiles.put(gitDir, head);
+        }
+
+        if (layout.equals("worktrees")) {
+            projects.add(new StormProject(coordinator, gitDirs));
+        } else {
+            for (Path gitDir : gitDirs) projects.add(new StormProject(coordinator, List.of(gitDir)));
+        }
+        for (StormProject p : projects) p.subscribe();
+        awaitSettled(expected("main"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (StormProject p : projects) p.dispose();
+        coordinator.dispose();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    @Benchmark
+    public void storm() throws IOException {
+        awaitSettled(expected(writeStorm()));
+    }
+
+    @Benchmark
+    public void lastWriteToBadge(WrittenStorm storm) {
+        awaitSettled(storm.expected);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void writeThroughput(Writes writes) throws IOException {
+        awaitSettled(expected(writeStorm()));
+        writes.headWrites += (long) repos * switchesPerRepo;
+    }
+
+    /** Writes one storm and reports each write; returns the branch every repository ends on. */
+    private String writeStorm() throws IOException {
+        int r = round++;
+        String last = null;
+        for (int k = 0; k < switchesPerRepo; k++) {
+            // ends on BRANCHES[r % 4], so every storm changes the badge of every repository
+            last = BRANCHES[Math.floorMod(r + k - switchesPerRepo + 1, BRANCHES.length)];
+            for (Path head : headFiles.values()) {
+                writeHead(head, last);
+                // what GitFileWatcher does after the VFS reported the write
+                coordinator.gitFilesChanged(coordinator.watchedPaths().match(head.toString().replace('\\', '/')));
+            }
+        }
+        return last;
+    }
+
+    /** The badge every repository must end up with when on {@code branch}. */
+    private Map<Path, BadgeState> expected(String branch) {
+        Map<Path, BadgeState> expected = new HashMap<>();
+        for (Path gitDir : headFiles.keySet()) expected.put(gitDir, StormProject.badgeFor(RepoHead.onBranch(branch)));
+        return expected;
+    }
+
+    private void awaitSettled(Map<Path, BadgeState> expected) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MS);
+        while (true) {
+            Map<Path, BadgeState> shown = new HashMap<>();
+            for (StormProject p : projects) shown.putAll(p.screen);
+            StringJoiner diff = new StringJoiner("; ");
+            expected.forEach((gitDir, want) -> {
+                BadgeState got = shown.getOrDefault(gitDir, BadgeState.HIDDEN);
+                if (!want.equals(got)) diff.add(gitDir + ": expected " + want + ", shown " + got);
+            });
+            if (diff.length() == 0) return;
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Storm did not settle within " + SETTLE_TIMEOUT_MS + " ms: " + diff);
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static void writeHead(Path head, String branch) throws IOException {
+        Path lock = head.resolveSibling("HEAD.lock");
+        Files.writeString(lock, "ref: refs/heads/" + branch + "\n", StandardCharsets.UTF_8);
+        Files.move(lock, head, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Headless stand-in for one project's {@link BranchStateService}; the screen is keyed by git directory. */
+    private static final class StormProject implements BranchWarnerCoordinator.Subscriber {
+
+        private final BranchWarnerCoordinator coordinator;
+        private final List<Path> gitDirs;
+        private final RecomputeCoalescer coalescer;
+        private final BadgeStateTable<Path> table = new BadgeStateTable<>();
+        final Map<Path, BadgeState> screen = new ConcurrentHashMap<>();
+
+        StormProject(BranchWarnerCoordinator coordinator, List<Path> gitDirs) {
+            this.coordinator = coordinator;
+            this.gitDirs = gitDirs;
+            this.coalescer = new RecomputeCoalescer(coordinator.scheduler(), BranchStateService.DEBOUNCE_MS, this::recompute);
+        }
+
+        static BadgeState badgeFor(RepoHead head) {
+            String match = (head != null) ? head.firstMatch(MATCHER) : null;
+            return (match != null) ? BadgeState.shown(head.displayText(match), 1, Corner.DEFAULT, RenderMode.DEFAULT)
+                    : BadgeState.HIDDEN;
+        }
+
+        void subscribe() {
+            coordinator.subscribe(this, gitDirs);
+            coalescer.requestNow();
+        }
+
+        @Override
+        public void requestRecompute(RecomputeTrigger trigger, long changedAtNanos) {
+            coalescer.request();
+        }
+
+        @Override
+        public void gitDirCreated(Path dir) {
+        }
+
+        private void recompute() {
+            Map<Path, BadgeState> desired = new HashMap<>();
+            Map<Path, RepoHead> heads = coordinator.heads(gitDirs);
+            for (Path gitDir : gitDirs) desired.put(gitDir, badgeFor(heads.get(gitDir)));
+            Map<Path, BadgeState> changes = table.diffShown(desired);
+            for (Path gitDir : changes.keySet()) screen.put(gitDir, table.get(gitDir));
+        }
+
+        void dispose() {
+            coalescer.cancel();
+            coordinator.unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.rc.branchwarner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * HEAD and ref resolution against synthetic {@code .git} layouts: a plain repository on a
+ * branch, a linked worktree behind a {@code gitdir:} file, and a detached HEAD that has to
+ * be named through {@code packed-refs} with {@code tagCount} tags. Each read goes through
+ * {@link HeadReader#repoHead}, as the coordinator's reads do, with the git directory
+ * resolved once up front as discovery does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeadReaderBenchmark {
+
+    @Param({"100", "100000"})
+    public int tagCount;
+
+    private Path dir;
+    private Path mainGit;
+    private Path worktreeGit;
+    private Path detachedGit;
+    private String detachedSha;
+    private HeadReader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bw-head-bench");
+
+        Path main = dir.resolve("main");
+        Path gitDir = Files.createDirectories(main.resolve(".git"));
+        write(gitDir.resolve("HEAD"), "ref: refs/heads/feature/prod\n");
+
+        Path worktree = dir.resolve("wt");
+        Path wtGit = Files.createDirectories(gitDir.resolve("worktrees/wt"));
+        write(wtGit.resolve("HEAD"), "ref: refs/heads/live\n");
+        write(wtGit.resolve("commondir"), "../..\n");
+        Files.createDirectories(worktree);
+        write(worktree.resolve(".git"), "gitdir: " + wtGit + "\n");
+
+        Path detached = dir.resolve("deploy");
+        Path depGit = Files.createDirectories(detached.resolve(".git"));
+        StringBuilder packed = new StringBuilder("# pack-refs with: peeled fully-peeled sorted \n");
+        packed.append(sha(0)).append(" refs/heads/prod\n");
+        for (int i = 1; i <= tagCount; i++) {
+            packed.append(sha(i)).append(" refs/tags/").append(String.format("v%08d", i)).append('\n');
+        }
+        write(depGit.resolve("packed-refs"), packed.toString());
+        detachedSha = sha(tagCount / 2);
+        write(depGit.resolve("HEAD"), detachedSha + "\n");
+
+        reader = new HeadReader();
+        mainGit = reader.resolveGitDir(main);
+        worktreeGit = reader.resolveGitDir(worktree);
+        detachedGit = reader.resolveGitDir(detached);
+        reader.repoHead(mainGit);
+        reader.repoHead(worktreeGit);
+        reader.repoHead(detachedGit);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    /** Steady state: HEAD unchanged, one stat and no read. */
+    @Benchmark
+    public RepoHead cachedBranch() {
+        return reader.repoHead(mainGit);
+    }
+
+    @Benchmark
+    public RepoHead cachedWorktree() {
+        return reader.repoHead(worktreeGit);
+    }
+
+    /** Cold cache: what every poll cost before HEAD reads were cached. */
+    @Benchmark
+    public RepoHead uncachedBranch() {
+        return new HeadReader().repoHead(mainGit);
+    }
+
+    @Benchmark
+    public RepoHead detachedNames() {
+        return reader.repoHead(detachedGit);
+    }
+
+    /** Naming the detached HEAD right after {@code packed-refs} was rewritten (a fetch or gc): a cold index. */
+    @Benchmark
+    public List<String> detachedNamesAfterRepack() {
+        return new RefIndex(detachedGit).namesFor(detachedSha);
+    }
+
+    private static String sha(int i) {
+        return String.format("%040x", 0xabcdefL * (i + 1));
+    }
+
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
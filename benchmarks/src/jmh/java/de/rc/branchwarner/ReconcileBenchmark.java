@@ -0,0 +1,69 @@
+package de.rc.branchwarner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The background half of a recompute: diffing the badges the service wants shown against
+ * the last applied state with {@link BadgeStateTable#diffShown}, as
+ * {@link BadgeReconciler#reconcileShown} does. {@code editors} editors are open (stubbed by
+ * plain keys); the badge is on the selected one, or with "all splits" on every one of them.
+ * The EDT half only ever sees the returned changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReconcileBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    public int editors;
+
+    private Object[] keys;
+    private BadgeStateTable<Object> table;
+    private BadgeStateTable<Object> allSplitsTable;
+    private final BadgeState shown = BadgeState.shown("PROD", 1, Corner.BOTTOM_RIGHT, RenderMode.OVERLAY);
+    private Map<Object, BadgeState> everyEditor;
+    private int selected;
+
+    @Setup
+    public void setUp() {
+        keys = new Object[editors];
+        for (int i = 0; i < editors; i++) keys[i] = new Object();
+        everyEditor = new HashMap<>();
+        for (Object key : keys) everyEditor.put(key, shown);
+
+        table = new BadgeStateTable<>();
+        table.diffShown(Map.of(keys[0], shown));
+        allSplitsTable = new BadgeStateTable<>();
+        allSplitsTable.diffShown(everyEditor);
+    }
+
+    /** Nothing changed since the last recompute: expected to produce no work for the EDT. */
+    @Benchmark
+    public Map<Object, BadgeState> steadyState() {
+        return table.diffShown(Map.of(keys[0], shown));
+    }
+
+    /** The badge moves to another editor: exactly two changes. */
+    @Benchmark
+    public Map<Object, BadgeState> selectionMoves() {
+        selected = (selected + 1) % editors;
+        return table.diffShown(Map.of(keys[selected], shown));
+    }
+
+    /** Every editor carries a badge and nothing changed. */
+    @Benchmark
+    public Map<Object, BadgeState> allSplitsSteadyState() {
+        return allSplitsTable.diffShown(everyEditor);
+    }
+}
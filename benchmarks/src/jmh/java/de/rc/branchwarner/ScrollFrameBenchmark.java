@@ -0,0 +1,127 @@
+package de.rc.branchwarner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one scrolling frame with the badge drawn as an overlay component
+ * ({@link RenderMode#OVERLAY}) versus painted by the editor ({@link RenderMode#EDITOR}).
+ * A headless stand-in for the editor (a scroll pane on a layered pane, with a content
+ * component drawing lines of text) is scrolled by one step and the viewport area is
+ * painted, as the repaint after a scroll would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScrollFrameBenchmark {
+
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 800;
+    private static final int LINE = 18;
+    private static final int LINES = 5_000;
+    private static final String TEXT = "PRODUCTION";
+
+    @Param({"OVERLAY", "EDITOR"})
+    public RenderMode mode;
+
+    @Param({"1", "3"})
+    public int scale;
+
+    private JLayeredPane layered;
+    private JViewport viewport;
+    private EditorOverlayInstaller.LiveBadgeCorner badge;
+    private BufferedImage target;
+    private Graphics2D g;
+    private int y;
+
+    /** Paints the lines in the clip and, in editor mode, the badge at the corner of the visible area. */
+    private final class FakeEditor extends JComponent {
+        private final Font badgeFont = EditorOverlayInstaller.LiveBadgeCorner.badgeFont(
+                new Font(Font.DIALOG, Font.PLAIN, 13), scale);
+        private Dimension badgeSize;
+
+        FakeEditor() {
+            setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+            setPreferredSize(new Dimension(WIDTH, LINES * LINE));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(Color.WHITE);
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setColor(Color.DARK_GRAY);
+            int first = clip.y / LINE;
+            int last = Math.min(LINES - 1, (clip.y + clip.height) / LINE);
+            for (int i = first; i <= last; i++) {
+                g.drawString("    private static final int LINE_" + i + " = " + i + "; // some code", 4, (i + 1) * LINE - 4);
+            }
+            if (mode == RenderMode.EDITOR) {
+                if (badgeSize == null) {
+                    badgeSize = EditorOverlayInstaller.LiveBadgeCorner.badgeSize(getFontMetrics(badgeFont), TEXT, scale);
+                }
+                Rectangle bounds = Corner.BOTTOM_RIGHT.place(getVisibleRect(), badgeSize);
+                EditorBadgePainter.paintBadge(g, bounds, TEXT, scale, badgeFont);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        layered = new JLayeredPane();
+        layered.setSize(WIDTH, HEIGHT);
+
+        JScrollPane scroll = new JScrollPane(new FakeEditor());
+        scroll.setBounds(0, 0, WIDTH, HEIGHT);
+        layered.add(scroll, JLayeredPane.DEFAULT_LAYER);
+        scroll.doLayout();
+        viewport = scroll.getViewport();
+        viewport.doLayout();
+
+        if (mode == RenderMode.OVERLAY) {
+            badge = new EditorOverlayInstaller.LiveBadgeCorner(TEXT, scale);
+            badge.setFont(new Font(Font.DIALOG, Font.PLAIN, 13));
+            layered.add(badge, JLayeredPane.DRAG_LAYER, 0);
+            EditorBadgeHandle.positionBadge(layered, badge, viewport, Corner.BOTTOM_RIGHT);
+        }
+
+        target = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g = target.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage scrollFrame() {
+        y = (y + 3 * LINE) % ((LINES * LINE) - HEIGHT);
+        viewport.setViewPosition(new Point(0, y));
+        if (mode == RenderMode.OVERLAY) {
+            EditorBadgeHandle.positionBadge(layered, badge, viewport, Corner.BOTTOM_RIGHT);
+        }
+
+        Graphics frame = g.create();
+        try {
+            Rectangle area = SwingUtilities.convertRectangle(viewport.getParent(), viewport.getBounds(), layered);
+            frame.setClip(area);
+            layered.paint(frame);
+        } finally {
+            frame.dispose();
+        }
+        return target;
+    }
+}
@@ -25,6 +25,7 @@ dependencies {
         )
         bundledPlugin("Git4Idea")
     }
+    testImplementation("junit:junit:4.13.2")
 }
 
 
@@ -39,4 +40,5 @@ intellijPlatform {
 }
 
 tasks.withType<JavaCompile> { options.encoding = "UTF-8" }
+tasks.test { jvmArgs("-Djava.awt.headless=true") }
 tasks.processResources { filteringCharset = "UTF-8" }
@@ -5,7 +5,11 @@ pluginManagement {
     }
     plugins {
         id("org.jetbrains.intellij.platform") version "2.10.5"
+        id("org.jetbrains.intellij.platform.module") version "2.10.5"
+        id("me.champeau.jmh") version "0.7.2"
     }
 }
 
 rootProject.name = "branch-warner"
+
+include("benchmarks")
@@ -0,0 +1,71 @@
+package de.rc.branchwarner;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rasterized badges, shared by all {@link EditorOverlayInstaller.LiveBadgeCorner}s.
+ * A badge is rendered once per text, size, font (which follows the Look and Feel and
+ * the IDE scale) and device scale of the target screen, so painting is a single blit.
+ * The least recently used images are evicted once {@link #MAX_ENTRIES} is reached.
+ */
+final class BadgeImageCache {
+
+    static final int MAX_ENTRIES = 32;
+
+    private static final Color FILL = new Color(255, 0, 0, 180);
+
+    private record Key(String text, int scale, Font font, int width, int height, double deviceScale) {}
+
+    private static final Map<Key, BufferedImage> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private BadgeImageCache() {}
+
+    /** Draws the badge at (0, 0) with the given size in user space. */
+    static void paint(Graphics2D g, String text, int scale, Font font, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        AffineTransform tx = g.getTransform();
+        double deviceScale = Math.max(Math.abs(tx.getScaleX()), Math.abs(tx.getScaleY()));
+        g.drawImage(get(text, scale, font, width, height, deviceScale), 0, 0, width, height, null);
+    }
+
+    static synchronized BufferedImage get(String text, int scale, Font font, int width, int height, double deviceScale) {
+        return CACHE.computeIfAbsent(new Key(text, scale, font, width, height, deviceScale), BadgeImageCache::render);
+    }
+
+    private static BufferedImage render(Key k) {
+        int pw = (int) Math.ceil(k.width() * k.deviceScale());
+        int ph = (int) Math.ceil(k.height() * k.deviceScale());
+        BufferedImage img = new BufferedImage(Math.max(1, pw), Math.max(1, ph), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            g.scale(k.deviceScale(), k.deviceScale());
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            int w = k.width();
+            int h = k.height();
+            int pad = 6 * k.scale();
+            int radius = 12 * k.scale();
+
+            g.setColor(FILL);
+            g.fillRoundRect(0, 0, w - 1, h - 1, radius, radius);
+
+            g.setFont(k.font());
+            g.setColor(Color.WHITE);
+            FontMetrics fm = g.getFontMetrics();
+            int tx = pad;
+            int ty = h - pad - fm.getDescent() + 1;
+            g.drawString(k.text(), tx, ty);
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+}
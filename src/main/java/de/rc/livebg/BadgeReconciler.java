@@ -0,0 +1,131 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies badge states to editors. Callers hand in the editors that should carry a badge,
+ * on any thread; only editors whose state differs from the last applied one are touched,
+ * and those are updated together in a single EDT invocation.
+ */
+final class BadgeReconciler {
+
+    private final Project project;
+    private final Disposable parent;
+    private final BranchWarnerMetrics metrics;
+    private final BadgeStateTable<Editor> table = new BadgeStateTable<>();
+
+    /** @param parent owner of the per-editor badge handles; disposing it removes every badge */
+    BadgeReconciler(Project project, Disposable parent, BranchWarnerMetrics metrics) {
+        this.project = project;
+        this.parent = parent;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Shows the badge on the editors in {@code shown} and removes every other badge. Called
+     * on the EDT (selection changes), the changes are applied right away instead of in a
+     * later EDT invocation.
+     *
+     * @param changedAtNanos {@link System#nanoTime()} of the git change that led here, or {@code 0}
+     * @param onApplied run after the changes are applied on the EDT, or right away if there are none
+     * @return the number of editors whose badge has to change
+     */
+    int reconcileShown(Map<Editor, BadgeState> shown, long changedAtNanos, @Nullable Runnable onApplied) {
+        Map<Editor, BadgeState> changes = table.diffShown(shown);
+        if (changes.isEmpty()) {
+            if (onApplied != null) onApplied.run();
+            return 0;
+        }
+
+        var app = ApplicationManager.getApplication();
+        if (app.isDispatchThread()) {
+            apply(changes, changedAtNanos);
+            if (onApplied != null) onApplied.run();
+        } else {
+            app.invokeLater(() -> {
+                apply(changes, changedAtNanos);
+                if (onApplied != null) onApplied.run();
+            }, project.getDisposed());
+        }
+        return changes.size();
+    }
+
+    void forget(Editor ed) {
+        table.forget(ed);
+    }
+
+    private void apply(Map<Editor, BadgeState> changes, long changedAtNanos) {
+        long start = System.nanoTime();
+        int mutated = 0;
+        // Hide first: the badges go back to their frame's pool and the ones shown next reuse
+        // them, so moving the badge between editors only moves one component.
+        List<Editor> shown = new ArrayList<>();
+        for (Editor ed : changes.keySet()) {
+            if (ed.isDisposed()) {
+                table.forget(ed);
+                continue;
+            }
+            // Batches from the scheduler and from the EDT can arrive out of order; applying
+            // the latest recorded state instead of the batch's makes every batch converge.
+            if (table.get(ed).visible()) {
+                shown.add(ed);
+                continue;
+            }
+            if (removeOverlay(ed) | removePainter(ed)) mutated++;
+        }
+        for (Editor ed : shown) {
+            BadgeState st = table.get(ed);
+            if (st.mode() == RenderMode.EDITOR) {
+                removeOverlay(ed);
+                EditorBadgePainter.obtain(ed, parent).show(st.text(), st.scale(), st.corner());
+                mutated++;
+                continue;
+            }
+            removePainter(ed);
+            // a closed window takes its badges along; forgetting them lets the next reconcile show them again
+            EditorBadgeHandle handle = EditorBadgeHandle.obtain(ed, parent, () -> table.forget(ed));
+            if (handle != null) {
+                handle.show(st.text(), st.scale(), st.corner());
+                mutated++;
+            } else {
+                table.forget(ed); // not in a window yet, retry on the next recompute
+            }
+        }
+
+        long end = System.nanoTime();
+        metrics.edtApply.record(end - start);
+        metrics.editorsMutated.addAndGet(mutated);
+        if (changedAtNanos != 0) metrics.changeToVisible.record(end - changedAtNanos);
+
+        var event = new BranchWarnerEvents.BadgeApplied();
+        if (event.isEnabled()) {
+            event.project = project.getName();
+            event.editorsMutated = mutated;
+            event.changeToVisibleNanos = (changedAtNanos != 0) ? end - changedAtNanos : 0;
+            event.commit();
+        }
+    }
+
+    private static boolean removeOverlay(Editor ed) {
+        EditorBadgeHandle handle = EditorBadgeHandle.of(ed.getContentComponent());
+        if (handle == null) return false;
+        Disposer.dispose(handle);
+        return true;
+    }
+
+    private static boolean removePainter(Editor ed) {
+        EditorBadgePainter painter = EditorBadgePainter.of(ed.getContentComponent());
+        if (painter == null) return false;
+        Disposer.dispose(painter);
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package de.rc.branchwarner;
+
+/**
+ * What a single editor should show: the badge visibility plus everything that
+ * affects how it is rendered. Two equal states never require a Swing update.
+ */
+record BadgeState(boolean visible, String text, int scale, Corner corner, RenderMode mode) {
+
+    static final BadgeState HIDDEN = new BadgeState(false, "", 1, Corner.DEFAULT, RenderMode.DEFAULT);
+
+    static BadgeState shown(String text, int scale, Corner corner, RenderMode mode) {
+        return new BadgeState(true, text, scale, corner, mode);
+    }
+}
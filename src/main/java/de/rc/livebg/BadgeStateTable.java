@@ -0,0 +1,49 @@
+package de.rc.branchwarner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the last badge state handed out per key (editor) and reduces a full
+ * desired-state map to the entries that actually differ. Keys are held weakly so
+ * an editor that was never released properly does not leak.
+ */
+final class BadgeStateTable<K> {
+
+    private final Map<K, BadgeState> applied = new WeakHashMap<>();
+
+    /**
+     * Returns the changes needed to get from the last returned state to {@code shown}, and
+     * records them as applied. {@code shown} lists only the keys that should carry a badge;
+     * every other key currently visible is returned as {@link BadgeState#HIDDEN}. The cost
+     * depends on the number of badges, not on the number of keys ever seen.
+     */
+    synchronized Map<K, BadgeState> diffShown(Map<K, BadgeState> shown) {
+        Map<K, BadgeState> changes = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<K, BadgeState>> it = applied.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, BadgeState> e = it.next();
+            if (!shown.containsKey(e.getKey())) {
+                changes.put(e.getKey(), BadgeState.HIDDEN);
+                it.remove();
+            }
+        }
+        for (Map.Entry<K, BadgeState> e : shown.entrySet()) {
+            BadgeState last = applied.getOrDefault(e.getKey(), BadgeState.HIDDEN);
+            if (!last.equals(e.getValue())) changes.put(e.getKey(), e.getValue());
+            if (e.getValue().visible()) applied.put(e.getKey(), e.getValue()); else applied.remove(e.getKey());
+        }
+        return changes;
+    }
+
+    /** Latest state recorded for {@code key}. */
+    synchronized BadgeState get(K key) {
+        return applied.getOrDefault(key, BadgeState.HIDDEN);
+    }
+
+    /** Drops the key so the next {@link #diffShown} treats it as hidden. */
+    synchronized void forget(K key) {
+        applied.remove(key);
+    }
+}
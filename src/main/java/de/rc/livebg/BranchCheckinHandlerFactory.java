@@ -0,0 +1,32 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.CheckinProjectPanel;
+import com.intellij.openapi.vcs.changes.CommitContext;
+import com.intellij.openapi.vcs.checkin.CheckinHandler;
+import com.intellij.openapi.vcs.checkin.CheckinHandlerFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Asks for confirmation before committing to a repository on a warned branch, if enabled
+ * in the settings. Registered in {@code git4idea.xml}.
+ */
+public final class BranchCheckinHandlerFactory extends CheckinHandlerFactory {
+
+    @Override
+    public @NotNull CheckinHandler createHandler(@NotNull CheckinProjectPanel panel, @NotNull CommitContext commitContext) {
+        return new CheckinHandler() {
+            @Override
+            public ReturnResult beforeCheckin() {
+                Project project = panel.getProject();
+                if (!CommitGuard.isEnabled(project)) return ReturnResult.COMMIT;
+
+                List<String> warnings = CommitGuard.warningsFor(project, panel.getRoots());
+                if (warnings.isEmpty()) return ReturnResult.COMMIT;
+                return CommitGuard.confirm(project, "Commit", warnings) ? ReturnResult.COMMIT : ReturnResult.CANCEL;
+            }
+        };
+    }
+}
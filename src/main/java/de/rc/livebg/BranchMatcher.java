@@ -0,0 +1,263 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled form of the "warn branches" setting. Entries are comma separated and
+ * matched case-insensitively:
+ * <ul>
+ *   <li>{@code prod} - exact branch name</li>
+ *   <li>{@code release/*}, {@code hotfix-**}, {@code rc?} - globs; {@code *} and {@code ?}
+ *       stay within one path segment, {@code **} also crosses {@code /}</li>
+ *   <li>{@code ^prod-[a-z]+$} - regular expression (an entry starting with {@code ^} or ending with {@code $})</li>
+ *   <li>{@code upstream:origin/prod} - any of the above, matched against the upstream of the
+ *       current branch ({@code <remote>/<branch>}) instead of its name</li>
+ *   <li>{@code remote:production}, {@code remote:**prod.example.com**} - any of the above, matched
+ *       against the name and URLs of the remotes the current branch fetches from and pushes to</li>
+ * </ul>
+ * All entries live in one character trie keyed on their literal prefix: exact names are
+ * terminal nodes, globs and regexes hang off the node where their wildcard part begins.
+ * A lookup walks the branch name once and only evaluates patterns whose prefix matched,
+ * so the cost depends on the branch length, not on how many entries are configured.
+ * Scoped entries get a trie of their own per scope.
+ */
+final class BranchMatcher {
+
+    static final BranchMatcher NONE = new BranchMatcher(new Node(), 0, null, null);
+
+    private static final String UPSTREAM = "upstream:";
+    private static final String REMOTE = "remote:";
+
+    private final Node root;
+    private final int size;
+    private final @Nullable BranchMatcher upstream;
+    private final @Nullable BranchMatcher remote;
+
+    private BranchMatcher(Node root, int size, @Nullable BranchMatcher upstream, @Nullable BranchMatcher remote) {
+        this.root = root;
+        this.size = size;
+        this.upstream = upstream;
+        this.remote = remote;
+    }
+
+    static BranchMatcher compile(String spec) {
+        if (spec == null || spec.isBlank()) return NONE;
+
+        List<String> branches = new ArrayList<>();
+        List<String> upstreams = new ArrayList<>();
+        List<String> remotes = new ArrayList<>();
+        for (String raw : spec.split(",")) {
+            String entry = raw.trim();
+            if (hasScope(entry, UPSTREAM)) {
+                upstreams.add(entry.substring(UPSTREAM.length()).trim());
+            } else if (hasScope(entry, REMOTE)) {
+                remotes.add(entry.substring(REMOTE.length()).trim());
+            } else {
+                branches.add(entry);
+            }
+        }
+
+        BranchMatcher m = compileEntries(branches);
+        if (upstreams.isEmpty() && remotes.isEmpty()) return m;
+        return new BranchMatcher(m.root, m.size,
+                upstreams.isEmpty() ? null : compileEntries(upstreams),
+                remotes.isEmpty() ? null : compileEntries(remotes));
+    }
+
+    private static BranchMatcher compileEntries(List<String> entries) {
+        Node root = new Node();
+        List<String> rootGlobs = new ArrayList<>();
+        int size = 0;
+
+        for (String entry : entries) {
+            if (entry.isEmpty()) continue;
+
+            try {
+                if (isRegex(entry)) {
+                    Pattern p = Pattern.compile(entry, Pattern.CASE_INSENSITIVE);
+                    root.insert(regexPrefix(entry)).patterns.add(new Compiled(p, false));
+                } else if (isGlob(entry)) {
+                    String prefix = globPrefix(entry);
+                    if (prefix.isEmpty()) {
+                        rootGlobs.add(globToRegex(entry));
+                    } else {
+                        Pattern p = Pattern.compile(globToRegex(entry), Pattern.CASE_INSENSITIVE);
+                        root.insert(prefix).patterns.add(new Compiled(p, true));
+                    }
+                } else {
+                    root.insert(entry).terminal = true;
+                }
+                size++;
+            } catch (PatternSyntaxException ignored) {
+                // rejected by validate() in the settings page; skip if it slipped through
+            }
+        }
+
+        if (!rootGlobs.isEmpty()) {
+            // Globs without a literal prefix are folded into a single alternation.
+            Pattern combined = Pattern.compile("(?:" + String.join(")|(?:", rootGlobs) + ")", Pattern.CASE_INSENSITIVE);
+            root.patterns.add(new Compiled(combined, true));
+        }
+        return new BranchMatcher(root, size, null, null);
+    }
+
+    /** @return a human readable problem with {@code spec}, or {@code null} if every entry compiles */
+    static String validate(String spec) {
+        if (spec == null) return null;
+        for (String raw : spec.split(",")) {
+            String entry = raw.trim();
+            for (String scope : new String[]{UPSTREAM, REMOTE}) {
+                if (!hasScope(entry, scope)) continue;
+                entry = entry.substring(scope.length()).trim();
+                if (entry.isEmpty()) return "Missing pattern after '" + scope + "'";
+            }
+            if (!isRegex(entry)) continue;
+            try {
+                Pattern.compile(entry);
+            } catch (PatternSyntaxException e) {
+                return "Invalid regular expression '" + entry + "': " + e.getDescription();
+            }
+        }
+        return null;
+    }
+
+    boolean matches(String branch) {
+        if (branch == null || size == 0) return false;
+        String key = branch.toLowerCase(Locale.ROOT);
+
+        Node n = root;
+        for (int i = 0; ; i++) {
+            for (Compiled c : n.patterns) {
+                if (c.test(branch)) return true;
+            }
+            if (i == key.length()) return n.terminal;
+            n = n.children.get(key.charAt(i));
+            if (n == null) return false;
+        }
+    }
+
+    /** Whether the upstream ({@code <remote>/<branch>}) of the current branch matches an {@code upstream:} entry. */
+    boolean matchesUpstream(String ref) {
+        return upstream != null && upstream.matches(ref);
+    }
+
+    /** Whether a remote name or URL matches a {@code remote:} entry. */
+    boolean matchesRemote(String nameOrUrl) {
+        return remote != null && remote.matches(nameOrUrl);
+    }
+
+    /** Number of configured entries, scoped ones included. */
+    int size() {
+        return size + (upstream != null ? upstream.size : 0) + (remote != null ? remote.size : 0);
+    }
+
+    private static boolean hasScope(String entry, String scope) {
+        return entry.regionMatches(true, 0, scope, 0, scope.length());
+    }
+
+    /** Whether {@code entry} starts with {@code upstream:} or {@code remote:}. */
+    static boolean isScoped(String entry) {
+        return hasScope(entry, UPSTREAM) || hasScope(entry, REMOTE);
+    }
+
+    static boolean isRegex(String entry) {
+        return entry.startsWith("^") || entry.endsWith("$");
+    }
+
+    private static boolean isGlob(String entry) {
+        return entry.indexOf('*') >= 0 || entry.indexOf('?') >= 0;
+    }
+
+    private static String globPrefix(String glob) {
+        int i = 0;
+        while (i < glob.length() && glob.charAt(i) != '*' && glob.charAt(i) != '?') i++;
+        return glob.substring(0, i);
+    }
+
+    private static String globToRegex(String glob) {
+        return globToRegex(glob, false);
+    }
+
+    /**
+     * @param paths whether {@code glob} matches file paths, where {@code **}{@code /} also
+     *              matches no directory at all, so {@code **}{@code /*.sql} covers {@code x.sql}
+     */
+    static String globToRegex(String glob, boolean paths) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder lit = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                lit.append(c);
+                continue;
+            }
+            if (lit.length() > 0) {
+                sb.append(Pattern.quote(lit.toString()));
+                lit.setLength(0);
+            }
+            if (c == '?') {
+                sb.append("[^/]");
+            } else if (paths && glob.startsWith("**/", i) && (i == 0 || glob.charAt(i - 1) == '/')) {
+                sb.append("(?:.*/)?");
+                i += 2;
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                sb.append(".*");
+                i++;
+            } else {
+                sb.append("[^/]*");
+            }
+        }
+        if (lit.length() > 0) sb.append(Pattern.quote(lit.toString()));
+        return sb.toString();
+    }
+
+    /**
+     * Literal text every match of an anchored regex must start with, e.g. {@code prod-}
+     * for {@code ^prod-[a-z]+$}. Returns "" when the prefix cannot be determined safely.
+     */
+    private static String regexPrefix(String regex) {
+        if (!regex.startsWith("^") || regex.indexOf('|') >= 0 || regex.contains("(?")) return "";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if ("*?{".indexOf(c) >= 0) {
+                // quantifier makes the preceding character optional
+                if (sb.length() > 0) sb.setLength(sb.length() - 1);
+                break;
+            }
+            if ("\\.[]()+^$".indexOf(c) >= 0) break;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>(4);
+        final List<Compiled> patterns = new ArrayList<>(1);
+        boolean terminal;
+
+        Node insert(String text) {
+            Node n = this;
+            String key = text.toLowerCase(Locale.ROOT);
+            for (int i = 0; i < key.length(); i++) {
+                n = n.children.computeIfAbsent(key.charAt(i), k -> new Node());
+            }
+            return n;
+        }
+    }
+
+    private record Compiled(Pattern pattern, boolean full) {
+        boolean test(String branch) {
+            var m = pattern.matcher(branch);
+            return full ? m.matches() : m.find();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.rc.branchwarner;
+
+import com.intellij.dvcs.push.PrePushHandler;
+import com.intellij.dvcs.push.PushInfo;
+import com.intellij.dvcs.push.PushTarget;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import git4idea.GitRemoteBranch;
+import git4idea.push.GitPushTarget;
+import git4idea.repo.GitRemote;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asks for confirmation before pushing, if enabled in the settings, when a pushed
+ * repository is on a warned branch or the push goes to a warned branch or remote (see
+ * {@link BranchMatcher}). Registered in {@code git4idea.xml}.
+ */
+public final class BranchPrePushHandler implements PrePushHandler {
+
+    @Override
+    public @NotNull String getPresentableName() {
+        return "Branch Warner";
+    }
+
+    @Override
+    public @NotNull Result handle(@NotNull Project project, @NotNull List<PushInfo> pushDetails,
+                                  @NotNull ProgressIndicator indicator) {
+        if (!CommitGuard.isEnabled(project)) return Result.OK;
+        BranchMatcher matcher = project.getService(LiveBadgeSettings.class).getSnapshot().matcher();
+
+        List<String> warnings = new ArrayList<>();
+        for (PushInfo info : pushDetails) {
+            VirtualFile root = info.getRepository().getRoot();
+            List<String> local = CommitGuard.warningsFor(project, List.of(root));
+            if (!local.isEmpty()) {
+                warnings.addAll(local);
+                continue;
+            }
+            String target = warnedTarget(info.getPushSpec().getTarget(), matcher);
+            if (target != null) warnings.add(root.getName() + ": pushing to " + target);
+        }
+        if (warnings.isEmpty()) return Result.OK;
+        return CommitGuard.confirm(project, "Push", warnings) ? Result.OK : Result.ABORT;
+    }
+
+    /** The push target, e.g. {@code origin/prod}, if it is warned about; {@code null} otherwise. */
+    private static @Nullable String warnedTarget(PushTarget target, BranchMatcher matcher) {
+        if (!(target instanceof GitPushTarget)) return null;
+        GitRemoteBranch branch = ((GitPushTarget) target).getBranch();
+        String name = branch.getNameForLocalOperations();
+        if (matcher.matches(branch.getNameForRemoteOperations()) || matcher.matchesUpstream(name)) return name;
+
+        GitRemote remote = branch.getRemote();
+        if (matcher.matchesRemote(remote.getName())) return name;
+        for (String url : remote.getUrls()) {
+            if (matcher.matchesRemote(url)) return name;
+        }
+        for (String url : remote.getPushUrls()) {
+            if (matcher.matchesRemote(url)) return name;
+        }
+        return null;
+    }
+}
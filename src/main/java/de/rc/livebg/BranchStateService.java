@@ -1,288 +1,631 @@
 package de.rc.branchwarner;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.EditorFactory;
-import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileManager;
-import com.intellij.openapi.vfs.newvfs.BulkFileListener;
-import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import javax.swing.*;
-import java.awt.*;
-import java.awt.event.ComponentAdapter;
-import java.awt.event.ComponentEvent;
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.*;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service(Service.Level.PROJECT)
-public final class BranchStateService implements AutoCloseable {
+public final class BranchStateService implements BranchWarnerCoordinator.Subscriber, Disposable {
 
-    private final Project project;
-    private final Set<VirtualFile> headFiles = new HashSet<>();
-    private volatile String currentBranch = null;
-    private final ScheduledExecutorService exec =
-            Executors.newSingleThreadScheduledExecutor(r -> { var t = new Thread(r, "BranchWarnerPoll"); t.setDaemon(true); return t; });
-    private final ScheduledFuture<?> future;
+    private static final Logger LOG = Logger.getInstance(BranchStateService.class);
+
+    /** Delay used to fold a burst of change notifications into one recompute. */
+    static final long DEBOUNCE_MS = 150;
 
+    /** How long a badge painted from {@link LastStateCache} is shown as current without live confirmation. */
+    private static final long CACHE_TRUST_MS = Long.getLong("branchwarner.cacheTrustMs", 3000);
+
+    private final Project project;
+    /** Repository roots found on disk, mapped to their git directory. */
+    private final Map<VirtualFile, Path> nativeRoots = new ConcurrentHashMap<>();
+    private final BranchWarnerCoordinator coordinator = BranchWarnerCoordinator.getInstance();
+    private final HeadReader headReader = coordinator.headReader();
+    private final RecomputeCoalescer coalescer = new RecomputeCoalescer(coordinator.scheduler(), DEBOUNCE_MS, this::recompute);
+
+    /** Bit set of {@link RecomputeTrigger} ordinals requested since the last recompute. */
+    private final AtomicInteger pendingTriggers = new AtomicInteger();
+    /** {@link System#nanoTime()} of the first Git/VFS request since the last recompute, {@code 0} if none. */
+    private final AtomicLong pendingChangeNanos = new AtomicLong();
+
+    private final BranchWarnerMetrics metrics = new BranchWarnerMetrics(headReader::bytesRead);
+    private final BadgeReconciler reconciler;
+    private final RepoRootIndex rootIndex = new RepoRootIndex();
+    private final RepoDiscovery discovery = new RepoDiscovery(headReader);
+
+    /** Background discovery and first evaluation, see {@link #start(long)}. */
+    private volatile Future<?> startup;
+    private volatile boolean disposed;
+
+    /** Serializes handing badges to the reconciler between live and cached evaluations. */
+    private final Object renderLock = new Object();
+    /** Set once a live evaluation was rendered; cached state is never shown after that. */
+    private boolean liveRendered;
+
+    /**
+     * Editors that should carry the badge: the selected one, or with
+     * {@code allSplits} the selected one of every split and window. Replaced, never
+     * mutated, on the EDT from selection events.
+     */
+    private volatile Set<Editor> targets = Set.of();
+    /** Heads of the last rendered evaluation; a selection change places the badge from these. */
+    private volatile Map<VirtualFile, RepoHead> lastBranches = Map.of();
+    /** A {@link FileRules} decision for a file, valid while its repository's head equals {@code head}. */
+    private record FileDecision(RepoHead head, @Nullable String match) {}
+    /**
+     * Memoized file rule decisions. Dropped as a whole when the settings version changes;
+     * a single entry is re-evaluated when its repository's head changed. Guarded by {@link #renderLock}.
+     */
+    private final Map<VirtualFile, FileDecision> fileDecisions = new HashMap<>();
+    /** Closed files are never evicted one by one; the memo just starts over once it gets this big. */
+    private static final int MAX_FILE_DECISIONS = 4096;
+    private long fileDecisionsVersion = -1;
+
+    /** Public view of {@link #lastBranches}, see {@link #stateFor}; replaced, never mutated. */
+    private volatile Map<VirtualFile, BranchWarningState> states = Map.of();
+    /**
+     * Set once {@link #states} held repositories; until then an evaluation only seeds them
+     * and publishes nothing. Guarded by {@link #renderLock}.
+     */
+    private boolean statesSeeded;
+
+    /** Only wires listeners; all disk access happens in {@link #start(long)}. */
     public BranchStateService(Project project) {
         this.project = project;
+        this.reconciler = new BadgeReconciler(project, this, metrics);
 
+        var bus = project.getMessageBus().connect(this);
+        bus.subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
+            @Override public void selectionChanged(@NotNull FileEditorManagerEvent event) {
+                selectionMoved(textEditor(event.getOldEditor()), textEditor(event.getNewEditor()));
+            }
+        });
+        bus.subscribe(LiveBadgeSettings.Listener.TOPIC, () -> {
+            // allSplits may have changed
+            ApplicationManager.getApplication().invokeLater(this::seedTargets, project.getDisposed());
+            requestRecompute(RecomputeTrigger.SETTINGS);
+        });
+        bus.subscribe(ModuleRootListener.TOPIC, new ModuleRootListener() {
+            @Override public void rootsChanged(@NotNull ModuleRootEvent event) {
+                discovery.invalidate();
+                requestRecompute(RecomputeTrigger.ROOTS);
+            }
+        });
+    }
+
+    /**
+     * Starts repository discovery and the first evaluation on the shared scheduler and
+     * returns immediately. Disposing the service cancels a start that has not finished.
+     *
+     * @param requestedAtNanos when the startup activity began, including service creation
+     */
+    void start(long requestedAtNanos) {
+        if (startup != null || disposed) return;
+        try {
+            startup = coordinator.scheduler().submit(() -> initialize(requestedAtNanos));
+        } catch (RejectedExecutionException e) {
+            return; // application is shutting down
+        }
+        ApplicationManager.getApplication().invokeLater(this::seedTargets, project.getDisposed());
+        metrics.startupInitNanos = System.nanoTime() - requestedAtNanos;
+    }
+
+    /** Takes the badge targets from the editor manager; used once editors exist and when settings change. */
+    private void seedTargets() {
+        var fem = FileEditorManager.getInstance(project);
+        Set<Editor> next = new LinkedHashSet<>();
+        if (project.getService(LiveBadgeSettings.class).getSnapshot().allSplits()) {
+            for (FileEditor fe : fem.getSelectedEditors()) {
+                Editor ed = textEditor(fe);
+                if (ed != null) next.add(ed);
+            }
+        } else {
+            Editor ed = fem.getSelectedTextEditor();
+            if (ed != null) next.add(ed);
+        }
+        renderTargets(next);
+    }
+
+    /**
+     * Moves the badge on a tab switch: drops {@code from}, adds {@code to} and places the
+     * badge from the last evaluation. Touches only the editors involved; no recompute.
+     * With {@code allSplits}, focus moving to another split or window leaves {@code from}
+     * selected in its own split, so it keeps its badge.
+     */
+    private void selectionMoved(@Nullable Editor from, @Nullable Editor to) {
+        boolean allSplits = project.getService(LiveBadgeSettings.class).getSnapshot().allSplits();
+        Set<Editor> next = new LinkedHashSet<>(allSplits ? targets : Set.of());
+        if (from != null && !(allSplits && isSelectedInAnySplit(from))) next.remove(from);
+        if (to != null) next.add(to);
+        metrics.selectionMoves.incrementAndGet();
+        renderTargets(next);
+    }
+
+    private boolean isSelectedInAnySplit(Editor ed) {
+        for (FileEditor fe : FileEditorManager.getInstance(project).getSelectedEditors()) {
+            if (textEditor(fe) == ed) return true;
+        }
+        return false;
+    }
+
+    private void renderTargets(Set<Editor> next) {
+        synchronized (renderLock) {
+            targets = Set.copyOf(next);
+            reconciler.reconcileShown(shownBadges(lastBranches), 0, null);
+        }
+    }
+
+    private static @Nullable Editor textEditor(@Nullable FileEditor fe) {
+        return (fe instanceof TextEditor te) ? te.getEditor() : null;
+    }
+
+    private void initialize(long requestedAtNanos) {
+        try {
+            initializeNow(requestedAtNanos);
+        } catch (Throwable t) {
+            // nobody reads the startup future; without this a failed start would go unnoticed
+            LOG.warn("Branch Warner startup failed for " + project.getName(), t);
+        }
+    }
+
+    private void initializeNow(long requestedAtNanos) {
+        paintFromCache(requestedAtNanos);
+
+        long t0 = System.nanoTime();
         collectHeadFiles();
-        recompute();
-
-        project.getMessageBus().connect().subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
-            @Override public void after(@NotNull List<? extends VFileEvent> events) {
-                for (VFileEvent ev : events) {
-                    var vf = ev.getFile();
-                    var p  = ev.getPath();
-                    if ((vf != null && headFiles.contains(vf)) || (p != null && p.endsWith("/.git/HEAD"))) {
-                        recompute();
-                        return;
-                    }
-                }
+        if (disposed) return;
+        long t1 = System.nanoTime();
+
+        pendingTriggers.getAndUpdate(m -> m | (1 << RecomputeTrigger.STARTUP.ordinal()));
+        recompute(() -> metrics.recordStartup(project.getName(), t1 - t0, System.nanoTime() - requestedAtNanos));
+    }
+
+    /**
+     * Shows the badge from {@link LastStateCache} before anything else is known. The live
+     * evaluation replaces it; should that not arrive within {@link #CACHE_TRUST_MS}, the
+     * cached badge is marked stale.
+     */
+    private void paintFromCache(long requestedAtNanos) {
+        Map<Path, RepoHead> cached = project.getService(LastStateCache.class).validHeads(coordinator);
+        if (cached.isEmpty()) return;
+
+        var lfs = LocalFileSystem.getInstance();
+        Map<VirtualFile, RepoHead> branches = new HashMap<>();
+        cached.forEach((workTree, head) -> {
+            VirtualFile root = lfs.findFileByNioFile(workTree);
+            if (root != null) branches.put(root, head);
+        });
+        if (branches.isEmpty()) return;
+
+        synchronized (renderLock) {
+            if (liveRendered || disposed) return;
+            rootIndex.rebuild(branches.keySet());
+            setBranches(branches);
+            reconciler.reconcileShown(shownBadges(branches), 0,
+                    () -> metrics.startupCachedBadgeNanos = System.nanoTime() - requestedAtNanos);
+        }
+
+        CompletableFuture.delayedExecutor(CACHE_TRUST_MS, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (renderLock) {
+                if (liveRendered || disposed) return;
+                Map<VirtualFile, RepoHead> stale = new HashMap<>();
+                branches.forEach((root, head) -> stale.put(root, head.asStale()));
+                setBranches(stale);
+                reconciler.reconcileShown(shownBadges(stale), 0, null);
             }
         });
+    }
+
+    /**
+     * Schedules a recompute. Calls arriving within {@link #DEBOUNCE_MS} of each other
+     * (Git4Idea notifications, HEAD writes, tab switches) collapse into a single run;
+     * settings changes run right away.
+     */
+    public void requestRecompute(RecomputeTrigger trigger) {
+        boolean change = trigger == RecomputeTrigger.GIT || trigger == RecomputeTrigger.VFS;
+        requestRecompute(trigger, change ? System.nanoTime() : 0);
+    }
 
-        future = exec.scheduleAtFixedRate(this::recompute, 1, 1, TimeUnit.SECONDS);
+    /** @param changedAtNanos when the underlying change was first seen, {@code 0} if not a repository change */
+    @Override
+    public void requestRecompute(RecomputeTrigger trigger, long changedAtNanos) {
+        pendingTriggers.getAndUpdate(m -> m | (1 << trigger.ordinal()));
+        if (changedAtNanos != 0) pendingChangeNanos.compareAndSet(0, changedAtNanos);
+        if (trigger == RecomputeTrigger.SETTINGS) coalescer.requestNow(); else coalescer.request();
     }
 
+    /** Number of recomputes executed since the service was created. */
+    public long getRecomputeCount() { return metrics.recomputes.get(); }
+
+    /** Recomputes that left every badge as it was, i.e. wasted work. */
+    public long getIdleRecomputeCount() { return metrics.idleRecomputes.get(); }
+
+    BranchWarnerMetrics getMetrics() { return metrics; }
+
+    /**
+     * Finds the repositories enclosing the content roots and the project base directory,
+     * plus their submodules, through {@link RepoDiscovery}, and subscribes to them at the
+     * {@link BranchWarnerCoordinator}. Only runs when the discovery cache was invalidated.
+     */
     private void collectHeadFiles() {
-        headFiles.clear();
         var lfs = LocalFileSystem.getInstance();
 
+        List<Path> candidates = new ArrayList<>();
         for (VirtualFile root : ProjectRootManager.getInstance(project).getContentRoots()) {
-            File head = new File(root.getPath(), ".git/HEAD");
-            if (head.isFile()) {
-                var vf = lfs.refreshAndFindFileByIoFile(head);
-                if (vf != null) headFiles.add(vf);
-            }
+            candidates.add(Path.of(root.getPath()));
         }
         String base = project.getBasePath();
-        if (base != null) {
-            File head = new File(base, ".git/HEAD");
-            if (head.isFile()) {
-                var vf = lfs.refreshAndFindFileByIoFile(head);
-                if (vf != null) headFiles.add(vf);
-            }
+        if (base != null) candidates.add(Path.of(base));
+
+        Map<VirtualFile, Path> found = new HashMap<>();
+        for (Map.Entry<Path, Path> repo : discovery.discover(candidates).entrySet()) {
+            if (disposed) return;
+            VirtualFile workTree = loadIntoVfs(lfs, repo.getKey());
+            if (workTree == null) continue;
+            found.put(workTree, repo.getValue());
+            // make sure the VFS knows the files, otherwise it reports no events for them
+            Path common = HeadReader.commonDir(repo.getValue());
+            loadIntoVfs(lfs, repo.getValue().resolve("HEAD"));
+            loadIntoVfs(lfs, common.resolve("packed-refs"));
+            // upstream: and remote: rules follow branch.* and remote.* of the shared config
+            loadIntoVfs(lfs, common.resolve("config"));
+            // loose refs name a detached HEAD; their directories are loaded in the background
+            VirtualFile refs = lfs.findFileByNioFile(common.resolve("refs"));
+            if (refs != null) VfsUtil.markDirtyAndRefresh(true, true, true, refs);
         }
+        nativeRoots.keySet().retainAll(found.keySet());
+        nativeRoots.putAll(found);
+        rootIndex.invalidate();
+        coordinator.subscribe(this, found.values());
     }
 
-    private static String readHeadBranch(VirtualFile head) {
-        try {
-            String text = new String(head.contentsToByteArray(), StandardCharsets.UTF_8).trim();
-            if (text.startsWith("ref:")) {
-                String ref = text.substring(text.indexOf(':') + 1).trim(); // refs/heads/BRANCH
-                int idx = ref.lastIndexOf('/');
-                return (idx >= 0) ? ref.substring(idx + 1) : ref;
-            }
-            return null; // detached
-        } catch (IOException e) { return null; }
+    /** Refreshes only files the VFS has not seen yet; a synchronous refresh per root adds up on large projects. */
+    private static @Nullable VirtualFile loadIntoVfs(LocalFileSystem lfs, Path file) {
+        VirtualFile vf = lfs.findFileByNioFile(file);
+        return (vf != null) ? vf : lfs.refreshAndFindFileByNioFile(file);
     }
 
-    private String resolveBranchViaGitApi() {
+    /**
+     * HEAD per repository root as reported by Git4Idea; empty if the plugin is unavailable.
+     * Detached repositories are left out: the coordinator names them through the on-disk
+     * ref index, with the same read deadline as every other disk access. Nothing here
+     * touches the disk; the upstream and remotes are added by {@link #withTracking}.
+     */
+    private Map<VirtualFile, RepoHead> resolveHeadsViaGitApi() {
+        Map<VirtualFile, RepoHead> result = new HashMap<>();
         try {
             var mgr = GitRepositoryManager.getInstance(project);
             for (GitRepository repo : mgr.getRepositories()) {
                 var name = repo.getCurrentBranchName();
-                if (name != null && !name.isBlank()) return name;
+                if (name != null && !name.isBlank()) result.put(repo.getRoot(), RepoHead.onBranch(name));
             }
         } catch (Throwable ignored) {}
-        return null;
+        return result;
+    }
+
+    /**
+     * {@code head} from Git4Idea with the upstream and remotes of {@code nativeHead}, the
+     * coordinator's read of the same repository, which parsed its {@code config} on the IO
+     * pool under the per-repository in-flight guard, deadline and backoff. While the two
+     * disagree on the branch (one of them has not seen a checkout yet) the head goes without
+     * tracking; the read that catches up triggers another evaluation.
+     */
+    private static RepoHead withTracking(RepoHead head, @Nullable RepoHead nativeHead) {
+        if (nativeHead == null || nativeHead.detached() || !nativeHead.names().equals(head.names())) return head;
+        return head.withTracking(new GitConfigIndex.Tracking(nativeHead.upstream(), nativeHead.remotes()));
     }
 
-    private static boolean isWarnBranch(String branch, LiveBadgeSettings.State state) {
-        if (branch == null || state == null || state.branches == null) return false;
-        for (String t : state.branches.split(",")) {
-            if (t.trim().equalsIgnoreCase(branch)) return true;
+    public static BranchStateService getInstance(Project project) {
+        return project.getService(BranchStateService.class);
+    }
+
+    /**
+     * Branch state of the repository whose work tree is {@code root}, or {@code null} if the
+     * project has no such repository or it was not resolved yet. Answered from the last
+     * evaluation without touching git; safe on any thread.
+     */
+    public @Nullable BranchWarningState stateFor(VirtualFile root) {
+        return states.get(root);
+    }
+
+    /**
+     * Branch state of the repository containing {@code file}, warned about exactly when the
+     * badge would be on an editor of {@code file}: by the warn branches, or else by the first
+     * {@link FileRules file rule} covering it. Files outside every repository get the state of
+     * the project's only repository, if it has exactly one, as the badge does. {@link #stateFor}
+     * and {@link #warningFor} ignore file rules.
+     */
+    public @Nullable BranchWarningState stateForFile(VirtualFile file) {
+        Map<VirtualFile, BranchWarningState> s = states;
+        VirtualFile root = rootIndex.rootFor(file);
+        if (root == null) return (s.size() == 1) ? s.values().iterator().next() : null;
+
+        LiveBadgeSettings.Snapshot cfg = project.getService(LiveBadgeSettings.class).getSnapshot();
+        if (cfg.rules().isEmpty()) return s.get(root);
+        synchronized (renderLock) {
+            BranchWarningState state = states.get(root);
+            if (state == null || state.isWarned()) return state;
+            RepoHead head = lastBranches.get(root);
+            String match = (head != null) ? fileRuleMatch(file, root, head, cfg) : null;
+            return (match != null) ? state.withWarning(head.displayText(match)) : state;
         }
-        return false;
     }
 
+    /** Branch state of every repository of the project. */
+    public Collection<BranchWarningState> states() {
+        return states.values();
+    }
 
-    private static void positionBadge(JLayeredPane layered,
-                                  JComponent badge,
-                                  JViewport viewport,
-                                  String corner) {
-
-		Rectangle vr = SwingUtilities.convertRectangle(
-				viewport.getParent(),
-				viewport.getBounds(),
-				layered
-		);
-
-		Dimension ps = badge.getPreferredSize();
-		int margin = 8;
-
-		int x;
-		int y;
-
-		if ("TOP_LEFT".equalsIgnoreCase(corner)) {
-			x = vr.x + margin;
-			y = vr.y + margin;
-		} else if ("TOP_RIGHT".equalsIgnoreCase(corner)) {
-			x = vr.x + Math.max(0, vr.width - ps.width - margin);
-			y = vr.y + margin;
-		} else if ("BOTTOM_LEFT".equalsIgnoreCase(corner)) {
-			x = vr.x + margin;
-			y = vr.y + Math.max(0, vr.height - ps.height - margin);
-		} else {
-			// Default: BOTTOM_RIGHT
-			x = vr.x + Math.max(0, vr.width - ps.width - margin);
-			y = vr.y + Math.max(0, vr.height - ps.height - margin);
-		}
-
-		badge.setBounds(x, y, ps.width, ps.height);
-	}
-
-
-
-	private static void installRelayoutHooks(JComponent content,
-											 JLayeredPane layered,
-											 JComponent badge,
-											 JViewport viewport) {
-		final String KEY_HOOKS = "rc.live.hooksInstalled";
-		if (Boolean.TRUE.equals(content.getClientProperty(KEY_HOOKS))) return;
-
-		ComponentAdapter relayout = new ComponentAdapter() {
-			private void relayoutNow() {
-				if (!badge.isShowing()) return;
-				Object c = badge.getClientProperty("rc.live.corner");
-				String corner = (c instanceof String) ? (String) c : "BOTTOM_RIGHT";
-				positionBadge(layered, badge, viewport, corner);
-				layered.repaint(badge.getBounds());
-			}
-
-			@Override public void componentResized(ComponentEvent e) { relayoutNow(); }
-			@Override public void componentMoved(ComponentEvent e)   { relayoutNow(); }
-			@Override public void componentShown(ComponentEvent e)   { relayoutNow(); }
-			@Override public void componentHidden(ComponentEvent e)  { relayoutNow(); }
-		};
-
-		viewport.addComponentListener(relayout);
-		layered.addComponentListener(relayout);
-		content.putClientProperty(KEY_HOOKS, Boolean.TRUE);
-	}
-
-
-    private void setBadge(Editor ed, String branch, int scale, String corner) {
-        JComponent content = ed.getContentComponent();
-
-        JScrollPane sp = (ed instanceof EditorEx) ? ((EditorEx) ed).getScrollPane()
-                : (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, content);
-        if (sp == null) return;
-        JViewport viewport = sp.getViewport();
-        if (viewport == null) return;
-
-        JRootPane root = SwingUtilities.getRootPane(content);
-        if (root == null) return;
-        JLayeredPane layered = root.getLayeredPane();
-        if (layered == null) return;
-
-        Object existing = content.getClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE);
-        EditorOverlayInstaller.LiveBadgeCorner badge;
-        String text = (branch != null ? branch.toUpperCase() : "LIVE");
-
-        if (existing instanceof EditorOverlayInstaller.LiveBadgeCorner) {
-            badge = (EditorOverlayInstaller.LiveBadgeCorner) existing;
-            badge.update(text, scale);
-        } else {
-            badge = new EditorOverlayInstaller.LiveBadgeCorner(text, scale);
-            content.putClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE, badge);
-            layered.add(badge, JLayeredPane.DRAG_LAYER);
+    /** Badge text of the repository at {@code root}, or {@code null} if it is not warned about. */
+    public @Nullable String warningFor(VirtualFile root) {
+        BranchWarningState state = states.get(root);
+        return (state != null) ? state.warning() : null;
+    }
+
+    /**
+     * Installs the heads of an evaluation and publishes the repositories whose state changed
+     * to {@link BranchWarningListener#TOPIC}. The first evaluation that finds repositories,
+     * cached or live, is not published: the state at project open is no transition, and a
+     * commit guard would otherwise react to every repository being "newly" on its branch.
+     * Callers hold {@link #renderLock}.
+     */
+    private void setBranches(Map<VirtualFile, RepoHead> branches) {
+        BranchMatcher matcher = project.getService(LiveBadgeSettings.class).getSnapshot().matcher();
+        Map<VirtualFile, BranchWarningState> previous = states;
+        Map<VirtualFile, BranchWarningState> next = new HashMap<>();
+        List<BranchWarningState> changed = new ArrayList<>();
+        branches.forEach((root, head) -> {
+            BranchWarningState state = BranchWarningState.of(root, head, matcher);
+            next.put(root, state);
+            if (!state.equals(previous.get(root))) changed.add(state);
+        });
+        for (VirtualFile root : previous.keySet()) {
+            if (!next.containsKey(root)) changed.add(BranchWarningState.untracked(root));
         }
+        lastBranches = branches;
+        states = Map.copyOf(next);
 
-		badge.putClientProperty("rc.live.corner", corner);
-
-		positionBadge(layered, badge, viewport, corner);
-		layered.setComponentZOrder(badge, 0);
-		badge.setVisible(true);
-		layered.revalidate();
-		layered.repaint(badge.getBounds());
-
-		installRelayoutHooks(content, layered, badge, viewport);
-    }
-
-    private void clearBadge(Editor ed) {
-        JComponent content = ed.getContentComponent();
-        Object mark = content.getClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE);
-        if (mark instanceof Component) {
-            Component c = (Component) mark;
-            Container parent = c.getParent();
-            if (parent instanceof JLayeredPane) {
-                ((JLayeredPane) parent).remove(c);
-                parent.revalidate();
-                parent.repaint();
-            } else if (parent != null) {
-                parent.remove(c);
-                parent.revalidate();
-                parent.repaint();
-            }
+        boolean initial = !statesSeeded;
+        if (!next.isEmpty()) statesSeeded = true;
+        if (changed.isEmpty() || initial) return;
+        List<BranchWarningState> event = List.copyOf(changed);
+        try {
+            // the scheduler thread keeps notifications in order and out of the render lock
+            coordinator.scheduler().execute(() -> {
+                if (disposed || project.isDisposed()) return;
+                project.getMessageBus().syncPublisher(BranchWarningListener.TOPIC).warningStateChanged(event);
+            });
+        } catch (RejectedExecutionException ignored) {
+            // application is closing
         }
-        content.putClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE, null);
     }
 
-	private void recompute() {
-		if (headFiles.isEmpty()) collectHeadFiles();
+    /** Called when Git4Idea adds or removes repositories. */
+    void repositoriesChanged() {
+        discovery.invalidate();
+        rootIndex.invalidate();
+        requestRecompute(RecomputeTrigger.GIT);
+    }
 
-		String branch = resolveBranchViaGitApi();
-		if (branch == null) {
-			for (VirtualFile head : headFiles) {
-				String b = readHeadBranch(head);
-				if (b != null) { branch = b; break; }
-			}
-		}
+    /** Called by the coordinator when a {@code .git} was created in {@code dir}. */
+    @Override
+    public void gitDirCreated(Path dir) {
+        if (discovery.gitDirCreated(dir)) requestRecompute(RecomputeTrigger.ROOTS);
+    }
 
-		LiveBadgeSettings cfg = project.getService(LiveBadgeSettings.class);
-		LiveBadgeSettings.State st =
-				(cfg != null) ? cfg.getStateOrDefault() : new LiveBadgeSettings.State();
+    private void recompute() {
+        recompute(null);
+    }
 
-		final boolean anyWarn      = isWarnBranch(branch, st);
-		final String  displayText  = (branch != null ? branch.toUpperCase() : "UNKNOWN");
-		final int     displayScale = Math.max(1, st.scale);
+    /** @param onSettled run once the resulting badges are on screen (or right away if nothing changed) */
+    private void recompute(@Nullable Runnable onSettled) {
+        if (discovery.isDirty()) {
+            collectHeadFiles();
+        }
 
-		final String corner =
-				(st.corner != null && !st.corner.isBlank())
-						? st.corner
-						: "BOTTOM_RIGHT";
+        int triggers = pendingTriggers.getAndSet(0);
+        long changedAt = pendingChangeNanos.getAndSet(0);
+
+        long t0 = System.nanoTime();
+        Map<VirtualFile, RepoHead> branches = resolveHeadsViaGitApi();
+        long t1 = System.nanoTime();
+        // every native repository: heads Git4Idea lacks, and the tracking of those it has
+        Map<Path, RepoHead> heads = coordinator.heads(nativeRoots.values());
+        nativeRoots.forEach((root, gitDir) -> {
+            RepoHead head = heads.get(gitDir);
+            RepoHead fromGit4Idea = branches.get(root);
+            if (fromGit4Idea != null) branches.put(root, withTracking(fromGit4Idea, head));
+            else if (head != null) branches.put(root, head);
+        });
+        long t2 = System.nanoTime();
+        if (rootIndex.isDirty()) {
+            Set<VirtualFile> roots = new HashSet<>(nativeRoots.keySet());
+            roots.addAll(branches.keySet());
+            rootIndex.rebuild(roots);
+        }
 
-		// System.out.println("[BranchWarner] recompute: branch=" + displayText
-		//        + " warn=" + anyWarn + " scale=" + displayScale + " corner=" + corner);
+        long t3 = System.nanoTime();
+        int visited;
+        int changed;
+        synchronized (renderLock) {
+            liveRendered = true;
+            setBranches(branches);
+            Map<Editor, BadgeState> shown = shownBadges(branches);
+            visited = targets.size();
+            changed = reconciler.reconcileShown(shown, changedAt, onSettled);
+        }
+        long t4 = System.nanoTime();
+
+        recordRecompute(triggers, t1 - t0, t2 - t1, t4 - t3, visited, changed);
+        rememberState(branches);
+    }
+
+    /**
+     * Badges of the current {@link #targets} for the given repository heads. Only target
+     * editors can carry the badge, so only their repositories are looked up; the reconciler
+     * hides the badge everywhere else. Callers hold {@link #renderLock}.
+     */
+    private Map<Editor, BadgeState> shownBadges(Map<VirtualFile, RepoHead> branches) {
+        LiveBadgeSettings.Snapshot cfg = project.getService(LiveBadgeSettings.class).getSnapshot();
+
+        Map<Editor, BadgeState> shown = new HashMap<>();
+        for (Editor ed : targets) {
+            if (ed.isDisposed()) continue;
+            VirtualFile file = FileDocumentManager.getInstance().getFile(ed.getDocument());
+            VirtualFile root = rootIndex.rootFor(file);
+            RepoHead head = headFor(root, branches);
+            if (head == null) continue;
+            String match = head.firstMatch(cfg.matcher());
+            if (match == null && root != null && !cfg.rules().isEmpty()) {
+                match = fileRuleMatch(file, root, head, cfg);
+            }
+            if (match != null) {
+                shown.put(ed, BadgeState.shown(head.displayText(match), cfg.scale(), cfg.corner(), cfg.renderMode()));
+            }
+        }
+        return shown;
+    }
+
+    /**
+     * Name matched by the file rules for {@code file} in the repository at {@code root}.
+     * Memoized, so switching between tabs never evaluates a glob twice while the settings
+     * and the repository's branch stay the same. Callers hold {@link #renderLock}.
+     */
+    private @Nullable String fileRuleMatch(VirtualFile file, VirtualFile root, RepoHead head,
+                                           LiveBadgeSettings.Snapshot cfg) {
+        if (fileDecisionsVersion != cfg.version() || fileDecisions.size() >= MAX_FILE_DECISIONS) {
+            fileDecisions.clear();
+            fileDecisionsVersion = cfg.version();
+        }
+        FileDecision d = fileDecisions.get(file);
+        if (d != null && d.head().equals(head)) {
+            metrics.fileRuleHits.incrementAndGet();
+            return d.match();
+        }
+        metrics.fileRuleEvaluations.incrementAndGet();
+        String path = file.getPath().substring(Math.min(file.getPath().length(), root.getPath().length() + 1));
+        String match = cfg.rules().match(path, head);
+        fileDecisions.put(file, new FileDecision(head, match));
+        return match;
+    }
 
-		Editor[] editors = EditorFactory.getInstance().getAllEditors();
-		Editor selected  = FileEditorManager.getInstance(project).getSelectedTextEditor();
+    /** Hands the heads of natively discovered repositories to {@link LastStateCache}. */
+    private void rememberState(Map<VirtualFile, RepoHead> branches) {
+        Map<Path, RepoHead> heads = new HashMap<>();
+        Map<Path, Path> gitDirs = new HashMap<>();
+        nativeRoots.forEach((root, gitDir) -> {
+            RepoHead head = branches.get(root);
+            if (head == null) return;
+            Path workTree = Path.of(root.getPath());
+            heads.put(workTree, head);
+            gitDirs.put(workTree, gitDir);
+        });
+        project.getService(LastStateCache.class).update(heads, gitDirs, coordinator);
+    }
+
+    private void recordRecompute(int triggers, long gitApiNanos, long headReadNanos, long reconcileNanos,
+                                 int visited, int changed) {
+        metrics.recomputes.incrementAndGet();
+        if (changed == 0) metrics.idleRecomputes.incrementAndGet();
+        metrics.editorsVisited.addAndGet(visited);
+        metrics.gitApi.record(gitApiNanos);
+        metrics.headRead.record(headReadNanos);
+        metrics.reconcileDiff.record(reconcileNanos);
+
+        StringJoiner names = new StringJoiner(",");
+        for (RecomputeTrigger t : RecomputeTrigger.values()) {
+            if ((triggers & (1 << t.ordinal())) == 0) continue;
+            metrics.countTrigger(t);
+            names.add(t.name());
+        }
 
-		for (Editor ed : editors) {
-			if (ed.getProject() != this.project) {
-				continue;
-			}
+        var event = new BranchWarnerEvents.Recompute();
+        if (event.isEnabled()) {
+            event.project = project.getName();
+            event.triggers = names.toString();
+            event.gitApiNanos = gitApiNanos;
+            event.headReadNanos = headReadNanos;
+            event.reconcileNanos = reconcileNanos;
+            event.editorsVisited = visited;
+            event.editorsChanged = changed;
+            event.commit();
+        }
+    }
 
-			if (!anyWarn || ed != selected) {
-				clearBadge(ed);
-			} else {
-				setBadge(ed, displayText, displayScale, corner);
-			}
-		}
-	}
+    /**
+     * HEAD of the repository at {@code root}. Files outside every repository (scratches,
+     * external files, {@code root == null}) only inherit a HEAD when the project has a single one.
+     */
+    private @Nullable RepoHead headFor(@Nullable VirtualFile root, Map<VirtualFile, RepoHead> branches) {
+        if (root != null) return branches.get(root);
+        return (branches.size() == 1) ? branches.values().iterator().next() : null;
+    }
 
+    /**
+     * Called from {@link EditorOverlayInstaller#editorCreated}. Editors restored before the
+     * service started produced no selection event; the first editor seeds the targets then.
+     */
+    void editorCreated(Editor ed) {
+        if (targets.isEmpty()) {
+            ApplicationManager.getApplication().invokeLater(this::seedTargets, project.getDisposed());
+        }
+    }
 
+    /** Called from {@link EditorOverlayInstaller#editorReleased} once the editor is gone. */
+    void editorReleased(Editor ed) {
+        Set<Editor> current = targets;
+        if (current.contains(ed)) {
+            Set<Editor> next = new LinkedHashSet<>(current);
+            next.remove(ed);
+            synchronized (renderLock) {
+                targets = Set.copyOf(next);
+            }
+        }
+        reconciler.forget(ed);
+    }
 
-    @Override public void close() {
-        headFiles.clear();
-        future.cancel(true);
-        exec.shutdownNow();
+    @Override public void dispose() {
+        disposed = true;
+        Future<?> f = startup;
+        if (f != null) f.cancel(false);
+        coalescer.cancel();
+        coordinator.unsubscribe(this);
+        nativeRoots.clear();
     }
 }
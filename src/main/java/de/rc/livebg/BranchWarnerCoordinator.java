@@ -0,0 +1,448 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Application wide part of the plugin, shared by all open projects.
+ * <ul>
+ *   <li>one scheduler thread runs every project's recomputes, instead of one thread per project</li>
+ *   <li>repositories are tracked once per git directory; two projects (or a project and its
+ *       worktree) opening the same repository share one HEAD read, one ref index and one
+ *       parsed {@code config}</li>
+ *   <li>a git file change re-reads only the affected repositories and is forwarded only to the
+ *       projects subscribed to a repository whose HEAD actually changed</li>
+ *   <li>the safety poll runs once for the whole application and is silent unless it finds
+ *       a change the listeners missed</li>
+ *   <li>HEAD reads run on a separate IO pool with a deadline, at most one per repository. A
+ *       repository that misses the deadline keeps serving its last known state, marked stale,
+ *       and a repeatedly slow one (stalled network mount) is retried with exponential backoff,
+ *       so a hung file system neither blocks the scheduler nor queues up reads.</li>
+ * </ul>
+ */
+@Service(Service.Level.APP)
+public final class BranchWarnerCoordinator implements Disposable {
+
+    /** Short delay folding the separate VFS batches of one git operation into one refresh. */
+    private static final long REFRESH_MS = 20;
+
+    /** Rare fallback poll for changes no listener saw; {@code 0} disables it. */
+    private static final long SAFETY_POLL_SECONDS = Long.getLong("branchwarner.safetyPollSeconds", 60);
+
+    /** Time a HEAD read may take before the repository is served as stale. */
+    private static final long READ_DEADLINE_MS = Long.getLong("branchwarner.readDeadlineMs", 250);
+    private static final long MIN_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 5 * 60_000;
+
+    private static final Logger LOG = Logger.getInstance(BranchWarnerCoordinator.class);
+
+    /**
+     * A consumer of repository state, in the plugin the {@link BranchStateService} of one
+     * project. Called on the coordinator's threads; implementations only schedule work.
+     */
+    interface Subscriber {
+        /** HEAD of a subscribed repository changed; {@code changedAtNanos} is {@code 0} if unknown. */
+        void requestRecompute(RecomputeTrigger trigger, long changedAtNanos);
+
+        /** A {@code .git} file or directory was created in {@code dir}. */
+        void gitDirCreated(Path dir);
+    }
+
+    /** One repository, identified by its git directory, and the projects showing it. */
+    private static final class SharedRepo {
+        final Path gitDir;
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        /** Last successfully read HEAD; never itself marked stale. */
+        volatile @Nullable RepoHead head;
+        volatile boolean stale;
+
+        // guarded by this
+        @Nullable CompletableFuture<RepoHead> inFlight;
+        /** Whether subscribers are told about the outcome of {@link #inFlight}. */
+        boolean notifyOnCompletion;
+        RecomputeTrigger trigger = RecomputeTrigger.VFS;
+        long changedAtNanos;
+        /** Consecutive reads slower than the deadline, and when the next read is allowed. */
+        int slowStreak;
+        long retryAtNanos;
+        boolean retryScheduled;
+
+        SharedRepo(Path gitDir) {
+            this.gitDir = gitDir;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> { var t = new Thread(r, "BranchWarner"); t.setDaemon(true); return t; });
+    /** Unbounded on purpose: reads are limited to one per repository (or file), and a hung one must not block the others. */
+    private final ExecutorService io =
+            Executors.newCachedThreadPool(r -> { var t = new Thread(r, "BranchWarnerIO"); t.setDaemon(true); return t; });
+    private final HeadReader headReader = new HeadReader();
+    private final GitConfigIndex configIndex = new GitConfigIndex();
+    private final WatchedGitPaths watchedPaths = new WatchedGitPaths();
+
+    private final Map<Path, SharedRepo> repos = new ConcurrentHashMap<>();
+    /** Git directories each project subscribed to, possibly none; guarded by {@code this}. */
+    private final Map<Subscriber, Set<Path>> subscriptions = new HashMap<>();
+
+    /** Running {@link #readAll} reads by file, so a hung one is not started again. */
+    private final Map<Path, CompletableFuture<?>> pendingReads = new ConcurrentHashMap<>();
+
+    private final Set<Path> dirty = ConcurrentHashMap.newKeySet();
+    /** {@link System#nanoTime()} of the first change since the last refresh, {@code 0} if none. */
+    private final AtomicLong dirtySince = new AtomicLong();
+    private final RecomputeCoalescer refresher = new RecomputeCoalescer(scheduler, REFRESH_MS, this::refreshDirty);
+    private final ScheduledFuture<?> safetyPoll;
+
+    public BranchWarnerCoordinator() {
+        safetyPoll = (SAFETY_POLL_SECONDS > 0)
+                ? scheduler.scheduleWithFixedDelay(this::poll, SAFETY_POLL_SECONDS, SAFETY_POLL_SECONDS, TimeUnit.SECONDS)
+                : null;
+    }
+
+    public static BranchWarnerCoordinator getInstance() {
+        return ApplicationManager.getApplication().getService(BranchWarnerCoordinator.class);
+    }
+
+    static @Nullable BranchWarnerCoordinator getInstanceIfCreated() {
+        return ApplicationManager.getApplication().getServiceIfCreated(BranchWarnerCoordinator.class);
+    }
+
+    /** The executor all projects schedule their work on. Never shut down by callers. */
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    HeadReader headReader() {
+        return headReader;
+    }
+
+    GitConfigIndex configIndex() {
+        return configIndex;
+    }
+
+    WatchedGitPaths watchedPaths() {
+        return watchedPaths;
+    }
+
+    /**
+     * Replaces the repositories {@code owner} shows. Repositories no project subscribes to
+     * anymore are dropped and their git files are no longer watched.
+     */
+    synchronized void subscribe(Subscriber owner, Collection<Path> gitDirs) {
+        Set<Path> wanted = new HashSet<>(gitDirs);
+        Set<Path> previous = subscriptions.getOrDefault(owner, Set.of());
+        if (subscriptions.containsKey(owner) && wanted.equals(previous)) return;
+
+        for (Path gitDir : previous) {
+            if (!wanted.contains(gitDir)) release(owner, gitDir);
+        }
+        for (Path gitDir : wanted) {
+            repos.computeIfAbsent(gitDir, SharedRepo::new).subscribers.add(owner);
+        }
+        subscriptions.put(owner, wanted);
+        watchedPaths.reset(repos.keySet());
+    }
+
+    synchronized void unsubscribe(Subscriber owner) {
+        Set<Path> previous = subscriptions.remove(owner);
+        if (previous == null) return;
+        for (Path gitDir : previous) release(owner, gitDir);
+        watchedPaths.reset(repos.keySet());
+    }
+
+    private void release(Subscriber owner, Path gitDir) {
+        SharedRepo repo = repos.get(gitDir);
+        if (repo == null) return;
+        repo.subscribers.remove(owner);
+        if (repo.subscribers.isEmpty()) repos.remove(gitDir);
+    }
+
+    /**
+     * Current HEAD of each repository in {@code gitDirs}, {@link RepoHead#stale() stale} if
+     * the last read did not finish in time. Answers from the last refresh without touching
+     * the disk. Repositories never read before are read here, all in parallel, waiting at
+     * most the read deadline for all of them together: a cold start with several slow
+     * repositories holds up the caller (the shared scheduler) once, not once per repository.
+     *
+     * @return heads by git directory; repositories that are not tracked, or whose HEAD is
+     * unknown or unreadable, are left out
+     */
+    Map<Path, RepoHead> heads(Collection<Path> gitDirs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_DEADLINE_MS);
+        Map<SharedRepo, CompletableFuture<RepoHead>> firstReads = new HashMap<>();
+        for (Path gitDir : gitDirs) {
+            SharedRepo repo = repos.get(gitDir);
+            if (repo == null || repo.head != null || repo.stale) continue;
+            CompletableFuture<RepoHead> read = read(repo, false, RecomputeTrigger.VFS, 0);
+            if (read != null) firstReads.put(repo, read);
+        }
+        if (!firstReads.isEmpty()) {
+            try {
+                CompletableFuture.allOf(firstReads.values().toArray(new CompletableFuture<?>[0]))
+                        .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ignored) {
+                // the late ones are served as stale below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+                // logged by completed()
+            }
+            firstReads.forEach((repo, read) -> {
+                synchronized (repo) {
+                    // report the result once it arrives, the caller has moved on
+                    if (!read.isDone()) {
+                        repo.notifyOnCompletion = true;
+                        repo.stale = true;
+                    }
+                }
+            });
+        }
+
+        Map<Path, RepoHead> result = new HashMap<>();
+        for (Path gitDir : gitDirs) {
+            SharedRepo repo = repos.get(gitDir);
+            RepoHead head = (repo != null) ? repo.head : null;
+            if (head != null) result.put(gitDir, repo.stale ? head.asStale() : head);
+        }
+        return result;
+    }
+
+    /**
+     * Applies {@code read} to each of {@code files} on the IO pool, all in parallel, waiting
+     * at most the read deadline for all of them together. For file system access besides
+     * the HEAD reads (startup cache checks) that must not hold up the scheduler when a mount
+     * stalls. Like HEAD reads, a file gets at most one read at a time: while an earlier one
+     * still hangs, the file is left out instead of tying up another IO thread.
+     *
+     * @return results by file; files whose read failed, returned {@code null}, did not
+     * finish in time or is still pending from an earlier call are left out
+     */
+    <R> Map<Path, R> readAll(Collection<Path> files, Function<? super Path, ? extends R> read) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_DEADLINE_MS);
+        Map<Path, CompletableFuture<R>> reads = new HashMap<>();
+        for (Path file : files) {
+            CompletableFuture<R> f = new CompletableFuture<>();
+            if (pendingReads.putIfAbsent(file, f) != null) continue;
+            try {
+                io.execute(() -> {
+                    try {
+                        f.complete(read.apply(file));
+                    } catch (Throwable t) {
+                        f.completeExceptionally(t);
+                    } finally {
+                        pendingReads.remove(file, f);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pendingReads.remove(file, f);
+                return Map.of(); // shutting down
+            }
+            reads.put(file, f);
+        }
+        try {
+            CompletableFuture.allOf(reads.values().toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // use what finished in time
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<Path, R> result = new HashMap<>();
+        reads.forEach((file, f) -> {
+            R r = (f.isDone() && !f.isCompletedExceptionally()) ? f.join() : null;
+            if (r != null) result.put(file, r);
+        });
+        return result;
+    }
+
+    /** Called by {@link GitFileWatcher} after a VFS batch touched files of {@code gitDirs}. */
+    void gitFilesChanged(Set<Path> gitDirs) {
+        dirtySince.compareAndSet(0, System.nanoTime());
+        for (Path gitDir : gitDirs) headReader.refsChanged(gitDir);
+        dirty.addAll(gitDirs);
+        refresher.request();
+    }
+
+    /** Called by {@link GitFileWatcher} when a {@code .git} file or directory was created in {@code dir}. */
+    void gitDirCreated(Path dir) {
+        Subscriber[] subscribers;
+        synchronized (this) {
+            subscribers = subscriptions.keySet().toArray(new Subscriber[0]);
+        }
+        for (Subscriber s : subscribers) s.gitDirCreated(dir);
+    }
+
+    private void poll() {
+        dirty.addAll(repos.keySet());
+        refresh(RecomputeTrigger.POLL, 0);
+    }
+
+    private void refreshDirty() {
+        refresh(RecomputeTrigger.VFS, dirtySince.getAndSet(0));
+    }
+
+    /**
+     * Starts an asynchronous re-read of each dirty repository. Projects are notified from
+     * {@link #completed} once a read finishes, and only if the repository's state changed.
+     */
+    private void refresh(RecomputeTrigger trigger, long changedAtNanos) {
+        for (var it = dirty.iterator(); it.hasNext(); ) {
+            Path gitDir = it.next();
+            it.remove();
+            SharedRepo repo = repos.get(gitDir);
+            if (repo != null) read(repo, true, trigger, changedAtNanos);
+        }
+    }
+
+    /**
+     * Starts reading {@code repo} unless a read is already running (which then also serves
+     * this request) or the repository is backing off after slow reads.
+     *
+     * @return the running read, or {@code null} while backing off
+     */
+    private @Nullable CompletableFuture<RepoHead> read(SharedRepo repo, boolean notify,
+                                                       RecomputeTrigger trigger, long changedAtNanos) {
+        synchronized (repo) {
+            if (notify) {
+                repo.notifyOnCompletion = true;
+                repo.trigger = trigger;
+                if (repo.changedAtNanos == 0) repo.changedAtNanos = changedAtNanos;
+            }
+            if (repo.inFlight != null) return repo.inFlight;
+
+            long now = System.nanoTime();
+            if (now < repo.retryAtNanos) {
+                scheduleRetry(repo, repo.retryAtNanos - now);
+                return null;
+            }
+
+            // completes only after completed() has published the result
+            CompletableFuture<RepoHead> read = new CompletableFuture<>();
+            try {
+                io.execute(() -> {
+                    try {
+                        RepoHead head = configIndex.attach(repo.gitDir, headReader.repoHead(repo.gitDir));
+                        completed(repo, now, head, null);
+                        read.complete(head);
+                    } catch (Throwable t) {
+                        completed(repo, now, null, t);
+                        read.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return null; // shutting down
+            }
+            repo.inFlight = read;
+            try {
+                scheduler.schedule(() -> deadlineMissed(repo, read), READ_DEADLINE_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down
+            }
+            return read;
+        }
+    }
+
+    /** Serves the last known state as stale while a read is overdue. */
+    private void deadlineMissed(SharedRepo repo, CompletableFuture<RepoHead> read) {
+        synchronized (repo) {
+            if (read.isDone() || repo.stale) return;
+            repo.stale = true;
+        }
+        if (repo.head != null) notifySubscribers(repo, RecomputeTrigger.VFS, 0);
+    }
+
+    private void completed(SharedRepo repo, long startNanos, @Nullable RepoHead head, @Nullable Throwable error) {
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        boolean changed;
+        boolean notify;
+        RecomputeTrigger trigger;
+        long changedAtNanos;
+        synchronized (repo) {
+            repo.inFlight = null;
+            if (tookMs > READ_DEADLINE_MS) {
+                repo.slowStreak++;
+                long backoff = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(repo.slowStreak - 1, 16));
+                repo.retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+                LOG.info("Reading HEAD of " + repo.gitDir + " took " + tookMs + " ms, next read in " + backoff + " ms at the earliest");
+            } else {
+                repo.slowStreak = 0;
+                repo.retryAtNanos = 0;
+            }
+
+            if (error != null) {
+                LOG.warn("Reading HEAD of " + repo.gitDir + " failed", error);
+                changed = !repo.stale;
+                repo.stale = true;
+            } else {
+                changed = repo.stale || !Objects.equals(head, repo.head);
+                repo.head = head;
+                repo.stale = false;
+            }
+            notify = repo.notifyOnCompletion;
+            trigger = repo.trigger;
+            changedAtNanos = repo.changedAtNanos;
+            repo.notifyOnCompletion = false;
+            repo.changedAtNanos = 0;
+        }
+        if (changed && notify) notifySubscribers(repo, trigger, changedAtNanos);
+    }
+
+    private void scheduleRetry(SharedRepo repo, long delayNanos) {
+        if (repo.retryScheduled) return;
+        repo.retryScheduled = true;
+        try {
+            scheduler.schedule(() -> {
+                synchronized (repo) {
+                    repo.retryScheduled = false;
+                }
+                dirty.add(repo.gitDir);
+                refresher.request();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    private static void notifySubscribers(SharedRepo repo, RecomputeTrigger trigger, long changedAtNanos) {
+        for (Subscriber s : repo.subscribers) {
+            s.requestRecompute(trigger, changedAtNanos);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        refresher.cancel();
+        if (safetyPoll != null) safetyPoll.cancel(false);
+        scheduler.shutdownNow();
+        io.shutdownNow();
+        synchronized (this) {
+            subscriptions.clear();
+            repos.clear();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.rc.branchwarner;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Custom JFR events; enable them in a recording to see Branch Warner next to the IDE's own events. */
+final class BranchWarnerEvents {
+
+    private BranchWarnerEvents() {}
+
+    @Name("de.rc.branchwarner.Recompute")
+    @Label("Branch Warner Recompute")
+    @Category("Branch Warner")
+    @Description("One evaluation of branch state and desired badges for a project")
+    static final class Recompute extends Event {
+        @Label("Project") String project;
+        @Label("Triggers") String triggers;
+        @Label("Git API") @Timespan(Timespan.NANOSECONDS) long gitApiNanos;
+        @Label("HEAD Read") @Timespan(Timespan.NANOSECONDS) long headReadNanos;
+        @Label("Reconcile") @Timespan(Timespan.NANOSECONDS) long reconcileNanos;
+        @Label("Editors Visited") int editorsVisited;
+        @Label("Editors Changed") int editorsChanged;
+    }
+
+    @Name("de.rc.branchwarner.BadgeApplied")
+    @Label("Branch Warner Badge Applied")
+    @Category("Branch Warner")
+    @Description("Batch of badge changes applied on the EDT")
+    static final class BadgeApplied extends Event {
+        @Label("Project") String project;
+        @Label("Editors Mutated") int editorsMutated;
+        @Label("Change To Visible") @Timespan(Timespan.NANOSECONDS) long changeToVisibleNanos;
+    }
+
+    @Name("de.rc.branchwarner.Startup")
+    @Label("Branch Warner Startup")
+    @Category("Branch Warner")
+    @Description("Project startup up to the first evaluated badge")
+    static final class Startup extends Event {
+        @Label("Project") String project;
+        @Label("Init") @Timespan(Timespan.NANOSECONDS) long initNanos;
+        @Label("Discovery") @Timespan(Timespan.NANOSECONDS) long discoveryNanos;
+        @Label("First Badge") @Timespan(Timespan.NANOSECONDS) long firstBadgeNanos;
+    }
+}
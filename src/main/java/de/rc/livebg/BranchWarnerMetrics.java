@@ -0,0 +1,126 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Runtime counters of one project's {@link BranchStateService}, shown by
+ * {@link ShowDiagnosticsAction}. Everything here is cheap enough to stay on permanently;
+ * the matching JFR events in {@link BranchWarnerEvents} are only committed while a
+ * recording has them enabled.
+ */
+final class BranchWarnerMetrics {
+
+    private static final Logger LOG = Logger.getInstance(BranchWarnerMetrics.class);
+
+    /** Time to first badge above which startup is logged as a warning. */
+    private static final long STARTUP_BUDGET_MS = Long.getLong("branchwarner.startupBudgetMs", 500);
+
+    final AtomicLong recomputes = new AtomicLong();
+    /** Recomputes that left every badge as it was. */
+    final AtomicLong idleRecomputes = new AtomicLong();
+    final AtomicLong editorsVisited = new AtomicLong();
+    final AtomicLong editorsMutated = new AtomicLong();
+    /** Badge moves on tab switches, handled without a recompute. */
+    final AtomicLong selectionMoves = new AtomicLong();
+    /** File rule lookups answered from the memo vs. actually evaluated. */
+    final AtomicLong fileRuleHits = new AtomicLong();
+    final AtomicLong fileRuleEvaluations = new AtomicLong();
+
+    final LatencyHistogram gitApi = new LatencyHistogram();
+    final LatencyHistogram headRead = new LatencyHistogram();
+    final LatencyHistogram reconcileDiff = new LatencyHistogram();
+    final LatencyHistogram edtApply = new LatencyHistogram();
+    /** From the first Git/VFS notification of a burst to the badge batch being applied on the EDT. */
+    final LatencyHistogram changeToVisible = new LatencyHistogram();
+
+    /** Startup phases in nanoseconds, {@code -1} until known. */
+    volatile long startupInitNanos = -1;
+    volatile long startupDiscoveryNanos = -1;
+    volatile long timeToFirstBadgeNanos = -1;
+    /** From the startup activity until the badge from the persisted last state was on screen. */
+    volatile long startupCachedBadgeNanos = -1;
+
+    private final Map<RecomputeTrigger, AtomicLong> triggers = new EnumMap<>(RecomputeTrigger.class);
+    private final LongSupplier headBytesRead;
+
+    BranchWarnerMetrics(LongSupplier headBytesRead) {
+        this.headBytesRead = headBytesRead;
+        for (RecomputeTrigger t : RecomputeTrigger.values()) triggers.put(t, new AtomicLong());
+    }
+
+    void countTrigger(RecomputeTrigger trigger) {
+        triggers.get(trigger).incrementAndGet();
+    }
+
+    /**
+     * Completes the startup figures; {@link #startupInitNanos} (time spent blocking the
+     * startup activity) is set by {@link BranchStateService#start} before.
+     *
+     * @param discoveryNanos  repository discovery on the scheduler thread
+     * @param firstBadgeNanos from the startup activity until the first evaluation is on screen
+     */
+    void recordStartup(String project, long discoveryNanos, long firstBadgeNanos) {
+        long initNanos = startupInitNanos;
+        startupDiscoveryNanos = discoveryNanos;
+        timeToFirstBadgeNanos = firstBadgeNanos;
+
+        String summary = "Branch Warner ready for " + project + ": init " + millis(initNanos)
+                + ", discovery " + millis(discoveryNanos) + ", first badge " + millis(firstBadgeNanos);
+        if (firstBadgeNanos > TimeUnit.MILLISECONDS.toNanos(STARTUP_BUDGET_MS)) {
+            LOG.warn(summary + " (budget " + STARTUP_BUDGET_MS + " ms)");
+        } else {
+            LOG.info(summary);
+        }
+
+        var event = new BranchWarnerEvents.Startup();
+        if (event.isEnabled()) {
+            event.project = project;
+            event.initNanos = initNanos;
+            event.discoveryNanos = discoveryNanos;
+            event.firstBadgeNanos = firstBadgeNanos;
+            event.commit();
+        }
+    }
+
+    long headBytesRead() {
+        return headBytesRead.getAsLong();
+    }
+
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Recomputes:          ").append(recomputes.get())
+          .append(" (idle ").append(idleRecomputes.get()).append(")\n");
+        sb.append("Triggers:           ");
+        triggers.forEach((t, n) -> sb.append(' ').append(t.name().toLowerCase()).append('=').append(n.get()));
+        sb.append('\n');
+        sb.append("Editors visited:     ").append(editorsVisited.get()).append('\n');
+        sb.append("Editors mutated:     ").append(editorsMutated.get()).append('\n');
+        sb.append("Selection moves:     ").append(selectionMoves.get()).append('\n');
+        sb.append("File rules:          ").append(fileRuleEvaluations.get()).append(" evaluated, ")
+                .append(fileRuleHits.get()).append(" memoized\n");
+        sb.append("HEAD bytes read:     ").append(headBytesRead()).append(" (all projects)\n");
+        sb.append("Startup:             init ").append(millis(startupInitNanos))
+          .append(", discovery ").append(millis(startupDiscoveryNanos))
+          .append(", first badge ").append(millis(timeToFirstBadgeNanos))
+          .append(" (cached ").append(millis(startupCachedBadgeNanos)).append(")\n");
+        sb.append('\n');
+        sb.append("Git API:             ").append(gitApi).append('\n');
+        sb.append("HEAD read:           ").append(headRead).append('\n');
+        sb.append("Reconcile (diff):    ").append(reconcileDiff).append('\n');
+        sb.append("Reconcile (EDT):     ").append(edtApply).append('\n');
+        sb.append("Change to visible:   ").append(changeToVisible).append('\n');
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        if (nanos < 0) return "-";
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000.0);
+    }
+}
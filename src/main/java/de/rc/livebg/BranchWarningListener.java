@@ -0,0 +1,30 @@
+package de.rc.branchwarner;
+
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Published on the project message bus when the warning state of repositories changes,
+ * so other plugins can react instead of polling {@link BranchStateService}. Part of the
+ * public API.
+ * <p>
+ * Transitions are coalesced: a burst of git changes results in one notification after
+ * the badge was recomputed, listing only repositories whose state differs from the last
+ * notification. Notifications arrive in order on a background thread; listeners must
+ * not block.
+ * <p>
+ * The state found when the project opens is not published, only later changes to it;
+ * read the initial state from {@link BranchStateService#states()}.
+ */
+public interface BranchWarningListener {
+
+    Topic<BranchWarningListener> TOPIC = Topic.create("Branch Warner warning state", BranchWarningListener.class);
+
+    /**
+     * @param changed new state of every repository whose state changed; a repository that
+     *                left the project is reported with empty {@link BranchWarningState#names()}
+     */
+    void warningStateChanged(@NotNull List<BranchWarningState> changed);
+}
@@ -0,0 +1,48 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Branch state of one repository of a project, as resolved by {@link BranchStateService}.
+ * Part of the public API; immutable.
+ *
+ * @param root     work tree root of the repository
+ * @param names    the checked out branch, or for a detached HEAD every branch and tag at
+ *                 that commit; empty if the repository is no longer tracked
+ * @param detached whether HEAD is detached
+ * @param stale    whether this is the last known state because the repository could not be read in time
+ * @param upstream upstream of the branch ({@code origin/prod}), if configured
+ * @param warning  text of the warning badge, {@code null} if the branch is not warned about
+ */
+public record BranchWarningState(@NotNull VirtualFile root, @NotNull List<String> names, boolean detached,
+                                 boolean stale, @Nullable String upstream, @Nullable String warning) {
+
+    /** The state reported for a repository that disappeared from the project. */
+    static BranchWarningState untracked(VirtualFile root) {
+        return new BranchWarningState(root, List.of(), false, false, null, null);
+    }
+
+    static BranchWarningState of(VirtualFile root, RepoHead head, BranchMatcher matcher) {
+        String match = head.firstMatch(matcher);
+        return new BranchWarningState(root, head.names(), head.detached(), head.stale(), head.upstream(),
+                (match != null) ? head.displayText(match) : null);
+    }
+
+    /** This state with the badge text of a file rule, see {@link BranchStateService#stateForFile}. */
+    BranchWarningState withWarning(String warning) {
+        return new BranchWarningState(root, names, detached, stale, upstream, warning);
+    }
+
+    public boolean isWarned() {
+        return warning != null;
+    }
+
+    /** The checked out branch, or {@code null} for a detached or untracked repository. */
+    public @Nullable String branch() {
+        return (detached || names.isEmpty()) ? null : names.get(0);
+    }
+}
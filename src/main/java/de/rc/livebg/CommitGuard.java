@@ -0,0 +1,55 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared part of the commit and push guards. Warnings come from
+ * {@link BranchStateService#warningFor}, one map lookup per repository, so a commit
+ * spanning many repositories costs nothing noticeable and git is never queried.
+ */
+final class CommitGuard {
+
+    private CommitGuard() {}
+
+    static boolean isEnabled(Project project) {
+        return !project.isDisposed() && project.getService(LiveBadgeSettings.class).getSnapshot().guardCommits();
+    }
+
+    /** {@code "<root>: <badge text>"} for each of {@code roots} on a warned branch. */
+    static List<String> warningsFor(Project project, Collection<VirtualFile> roots) {
+        BranchStateService service = project.getServiceIfCreated(BranchStateService.class);
+        if (service == null) return List.of();
+        List<String> result = new ArrayList<>();
+        for (VirtualFile root : roots) {
+            String warning = service.warningFor(root);
+            if (warning != null) result.add(root.getName() + ": " + warning);
+        }
+        return result;
+    }
+
+    /**
+     * Asks whether to go ahead despite the warnings; shown on the EDT, waiting for it when
+     * called from elsewhere.
+     *
+     * @param action "Commit" or "Push"
+     * @return {@code true} to proceed
+     */
+    static boolean confirm(Project project, String action, List<String> warnings) {
+        String message = action + " on a warned branch?\n\n" + String.join("\n", warnings);
+        AtomicBoolean proceed = new AtomicBoolean();
+        Runnable ask = () -> proceed.set(Messages.showOkCancelDialog(project, message, "Branch Warner",
+                action + " Anyway", "Cancel", Messages.getWarningIcon()) == Messages.OK);
+
+        var app = ApplicationManager.getApplication();
+        if (app.isDispatchThread()) ask.run(); else app.invokeAndWait(ask);
+        return proceed.get();
+    }
+}
@@ -0,0 +1,45 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.util.Locale;
+
+/** Editor corner the badge is anchored to. Names are the values stored in the settings. */
+enum Corner {
+    BOTTOM_RIGHT, BOTTOM_LEFT, TOP_RIGHT, TOP_LEFT;
+
+    static final Corner DEFAULT = BOTTOM_RIGHT;
+
+    /** Distance between the badge and the edges of the area it is anchored in. */
+    static final int MARGIN = 8;
+
+    /** Parses a stored value, case-insensitively; blank or unknown values give {@link #DEFAULT}. */
+    static Corner parse(@Nullable String value) {
+        if (value == null || value.isBlank()) return DEFAULT;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return DEFAULT;
+        }
+    }
+
+    boolean isTop() {
+        return this == TOP_LEFT || this == TOP_RIGHT;
+    }
+
+    boolean isLeft() {
+        return this == TOP_LEFT || this == BOTTOM_LEFT;
+    }
+
+    /** Bounds of a badge of the given size anchored to this corner of {@code area}. */
+    Rectangle place(Rectangle area, Dimension size) {
+        int x = isLeft()
+                ? area.x + MARGIN
+                : area.x + Math.max(0, area.width - size.width - MARGIN);
+        int y = isTop()
+                ? area.y + MARGIN
+                : area.y + Math.max(0, area.height - size.height - MARGIN);
+        return new Rectangle(x, y, size.width, size.height);
+    }
+}
@@ -0,0 +1,152 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+
+/**
+ * The badge of one editor together with the listeners that keep it in place. The badge
+ * component itself is leased from the frame's {@link FrameBadgeOverlay}. Disposing the
+ * handle returns the badge to the overlay and unregisters every listener, so nothing
+ * keeps the editor reachable afterwards. A handle does not outlive its overlay: when the
+ * window closes, the handle is disposed too and tells its owner the badge is gone. EDT only.
+ */
+final class EditorBadgeHandle implements Disposable {
+
+    private final JComponent content;
+    private final JViewport viewport;
+    private final JLayeredPane layered;
+    private final FrameBadgeOverlay overlay;
+    private final EditorOverlayInstaller.LiveBadgeCorner badge;
+    private final Runnable overlayLost;
+    private final ComponentAdapter relayout = new ComponentAdapter() {
+        @Override public void componentResized(ComponentEvent e) { RelayoutScheduler.schedule(EditorBadgeHandle.this); }
+        @Override public void componentMoved(ComponentEvent e)   { RelayoutScheduler.schedule(EditorBadgeHandle.this); }
+        @Override public void componentShown(ComponentEvent e)   { RelayoutScheduler.schedule(EditorBadgeHandle.this); }
+        @Override public void componentHidden(ComponentEvent e)  { RelayoutScheduler.schedule(EditorBadgeHandle.this); }
+    };
+
+    private Corner corner = Corner.DEFAULT;
+    private boolean disposed;
+
+    private EditorBadgeHandle(JComponent content, JViewport viewport, FrameBadgeOverlay overlay, Runnable overlayLost) {
+        this.content = content;
+        this.viewport = viewport;
+        this.overlay = overlay;
+        this.overlayLost = overlayLost;
+        this.layered = overlay.layered();
+        this.badge = overlay.acquire(this);
+
+        viewport.addComponentListener(relayout);
+        layered.addComponentListener(relayout);
+        content.putClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE, this);
+    }
+
+    /**
+     * Returns the editor's handle, creating it if needed. A handle attached to another
+     * window (the editor was moved) or to a disposed overlay is replaced.
+     *
+     * @param overlayLost run if the badge is removed because its window's overlay was
+     *                    disposed (window closed), so the owner can show it again later
+     * @return {@code null} if the editor is not attached to a window yet
+     */
+    static @Nullable EditorBadgeHandle obtain(Editor ed, Disposable parent, Runnable overlayLost) {
+        JComponent content = ed.getContentComponent();
+
+        JScrollPane sp = (ed instanceof EditorEx) ? ((EditorEx) ed).getScrollPane()
+                : (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, content);
+        if (sp == null) return null;
+        JViewport viewport = sp.getViewport();
+        if (viewport == null) return null;
+
+        JRootPane root = SwingUtilities.getRootPane(content);
+        if (root == null) return null;
+        JLayeredPane layered = root.getLayeredPane();
+        if (layered == null) return null;
+
+        EditorBadgeHandle existing = of(content);
+        if (existing != null) {
+            if (existing.layered == layered && existing.viewport == viewport && !existing.overlay.isDisposed()) {
+                return existing;
+            }
+            Disposer.dispose(existing);
+        }
+
+        EditorBadgeHandle handle = new EditorBadgeHandle(content, viewport, FrameBadgeOverlay.of(root, parent), overlayLost);
+        Disposer.register(parent, handle);
+        return handle;
+    }
+
+    static @Nullable EditorBadgeHandle of(JComponent content) {
+        Object h = content.getClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE);
+        return (h instanceof EditorBadgeHandle) ? (EditorBadgeHandle) h : null;
+    }
+
+    void show(String text, int scale, Corner corner) {
+        this.corner = corner;
+        badge.update(text, scale);
+
+        Rectangle old = badge.getBounds();
+        positionBadge(layered, badge, viewport, corner);
+        repaintMove(old);
+    }
+
+    /** Re-anchors the badge after the viewport or window moved; called by {@link RelayoutScheduler}. */
+    void relayoutNow() {
+        if (disposed || !badge.isShowing()) return;
+        Rectangle old = badge.getBounds();
+        positionBadge(layered, badge, viewport, corner);
+        if (!old.equals(badge.getBounds())) repaintMove(old);
+    }
+
+    /** Repaints the rectangle the badge left and the one it now covers, nothing else. */
+    private void repaintMove(Rectangle old) {
+        Rectangle now = badge.getBounds();
+        if (!old.isEmpty()) layered.repaint(old);
+        layered.repaint(now);
+    }
+
+    /** Called by the overlay as it is disposed; the badge it leased is gone. */
+    void overlayDisposed() {
+        if (disposed) return;
+        Disposer.dispose(this);
+        overlayLost.run();
+    }
+
+    @Override
+    public void dispose() {
+        if (disposed) return;
+        disposed = true;
+        RelayoutScheduler.cancel(this);
+
+        viewport.removeComponentListener(relayout);
+        layered.removeComponentListener(relayout);
+
+        overlay.release(this, badge);
+
+        if (content.getClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE) == this) {
+            content.putClientProperty(EditorOverlayInstaller.KEY_CORNER_BADGE, null);
+        }
+    }
+
+    static void positionBadge(JLayeredPane layered,
+                                  JComponent badge,
+                                  JViewport viewport,
+                                  Corner corner) {
+
+		Rectangle vr = SwingUtilities.convertRectangle(
+				viewport.getParent(),
+				viewport.getBounds(),
+				layered
+		);
+
+		badge.setBounds(corner.place(vr, badge.getPreferredSize()));
+	}
+}
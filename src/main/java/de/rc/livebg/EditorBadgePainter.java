@@ -0,0 +1,152 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.VisibleAreaEvent;
+import com.intellij.openapi.editor.event.VisibleAreaListener;
+import com.intellij.openapi.editor.markup.CustomHighlighterRenderer;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * The badge of one editor in {@link RenderMode#EDITOR} mode: painted by the editor itself
+ * through a custom renderer on a highlighter spanning the whole document, anchored to the
+ * visible area. There is no Swing component and no coordinate conversion; on scrolling
+ * only the rectangle the badge left and the one it moved to are repainted.
+ * <p>
+ * Disposing the painter removes the highlighter and the listener. EDT only.
+ */
+final class EditorBadgePainter implements CustomHighlighterRenderer, VisibleAreaListener, Disposable {
+
+    private static final String KEY = "rc.live.badgePainter";
+
+    private final Editor editor;
+    private final JComponent content;
+    private @Nullable RangeHighlighter highlighter;
+
+    private String text = "LIVE";
+    private int scale = 1;
+    private Corner corner = Corner.DEFAULT;
+
+    private Font font;
+    private Font fontBase;
+    private Dimension size;
+    /** Where the badge was last painted, in content coordinates; empty if not yet. */
+    private Rectangle painted = new Rectangle();
+    private boolean disposed;
+
+    private EditorBadgePainter(Editor editor) {
+        this.editor = editor;
+        this.content = editor.getContentComponent();
+        editor.getScrollingModel().addVisibleAreaListener(this, this);
+        content.putClientProperty(KEY, this);
+    }
+
+    /** Returns the editor's painter, creating it (owned by {@code parent}) if needed. */
+    static EditorBadgePainter obtain(Editor ed, Disposable parent) {
+        EditorBadgePainter existing = of(ed.getContentComponent());
+        if (existing != null) return existing;
+
+        EditorBadgePainter painter = new EditorBadgePainter(ed);
+        Disposer.register(parent, painter);
+        return painter;
+    }
+
+    static @Nullable EditorBadgePainter of(JComponent content) {
+        Object p = content.getClientProperty(KEY);
+        return (p instanceof EditorBadgePainter) ? (EditorBadgePainter) p : null;
+    }
+
+    void show(String text, int scale, Corner corner) {
+        if (scale != this.scale) font = null;
+        if (!text.equals(this.text)) size = null;
+        this.text = text;
+        this.scale = scale;
+        this.corner = corner;
+        ensureHighlighter();
+        repaintMove(editor.getScrollingModel().getVisibleArea());
+    }
+
+    @Override
+    public void visibleAreaChanged(VisibleAreaEvent e) {
+        if (disposed) return;
+        ensureHighlighter();
+        repaintMove(editor.getScrollingModel().getVisibleArea());
+    }
+
+    @Override
+    public void paint(Editor editor, RangeHighlighter highlighter, Graphics g0) {
+        if (disposed) return;
+        Rectangle visible = editor.getScrollingModel().getVisibleArea();
+        Font f = font();
+        painted = corner.place(visible, size(f));
+        paintBadge(g0, painted, text, scale, f);
+    }
+
+    /** Draws the badge into {@code bounds}; shared with the scrolling benchmark. */
+    static void paintBadge(Graphics g0, Rectangle bounds, String text, int scale, Font font) {
+        Graphics2D g = (Graphics2D) g0.create();
+        try {
+            g.translate(bounds.x, bounds.y);
+            BadgeImageCache.paint(g, text, scale, font, bounds.width, bounds.height);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * The highlighter spans the whole document and grows with it; should an edit still
+     * invalidate it (the whole text replaced), a new one is added.
+     */
+    private void ensureHighlighter() {
+        if (highlighter != null && highlighter.isValid()) return;
+        RangeHighlighter h = editor.getMarkupModel().addRangeHighlighter(
+                null, 0, editor.getDocument().getTextLength(), HighlighterLayer.LAST, HighlighterTargetArea.EXACT_RANGE);
+        h.setGreedyToLeft(true);
+        h.setGreedyToRight(true);
+        h.setCustomRenderer(this);
+        highlighter = h;
+    }
+
+    private void repaintMove(Rectangle visible) {
+        Rectangle next = corner.place(visible, size(font()));
+        if (!painted.isEmpty() && !painted.equals(next)) content.repaint(painted);
+        content.repaint(next);
+    }
+
+    /** Badge font derived from the editor component's (Look and Feel) font, cached until it changes. */
+    private Font font() {
+        Font base = editor.getComponent().getFont();
+        if (font == null || base != fontBase) {
+            fontBase = base;
+            font = EditorOverlayInstaller.LiveBadgeCorner.badgeFont(base, scale);
+            size = null;
+        }
+        return font;
+    }
+
+    private Dimension size(Font f) {
+        if (size == null) {
+            size = EditorOverlayInstaller.LiveBadgeCorner.badgeSize(content.getFontMetrics(f), text, scale);
+        }
+        return size;
+    }
+
+    @Override
+    public void dispose() {
+        if (disposed) return;
+        disposed = true;
+        if (highlighter != null) {
+            editor.getMarkupModel().removeHighlighter(highlighter);
+            highlighter = null;
+        }
+        if (!painted.isEmpty()) content.repaint(painted);
+        if (content.getClientProperty(KEY) == this) content.putClientProperty(KEY, null);
+    }
+}
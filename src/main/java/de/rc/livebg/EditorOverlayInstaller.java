@@ -3,6 +3,8 @@ package de.rc.branchwarner;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.event.EditorFactoryEvent;
 import com.intellij.openapi.editor.event.EditorFactoryListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 
 import javax.swing.*;
 import java.awt.*;
@@ -13,48 +15,81 @@ public final class EditorOverlayInstaller implements EditorFactoryListener {
 
     @Override
     public void editorCreated(EditorFactoryEvent event) {
-        
+        Project project = event.getEditor().getProject();
+        if (project != null && !project.isDisposed()) {
+            BranchStateService service = project.getServiceIfCreated(BranchStateService.class);
+            if (service != null) service.editorCreated(event.getEditor());
+        }
     }
 
     @Override
     public void editorReleased(EditorFactoryEvent event) {
         Editor ed = event.getEditor();
-        JComponent content = ed.getContentComponent();
-
-        Object mark = content.getClientProperty(KEY_CORNER_BADGE);
-        if (mark instanceof JComponent) {
-            JComponent badge = (JComponent) mark;
-            Container parent = badge.getParent();
-            if (parent != null) {
-                parent.remove(badge);
-                parent.revalidate();
-                parent.repaint();
-            }
+
+        EditorBadgeHandle handle = EditorBadgeHandle.of(ed.getContentComponent());
+        if (handle != null) Disposer.dispose(handle);
+        EditorBadgePainter painter = EditorBadgePainter.of(ed.getContentComponent());
+        if (painter != null) Disposer.dispose(painter);
+
+        Project project = ed.getProject();
+        if (project != null && !project.isDisposed()) {
+            BranchStateService service = project.getServiceIfCreated(BranchStateService.class);
+            if (service != null) service.editorReleased(ed);
         }
-        content.putClientProperty(KEY_CORNER_BADGE, null);
     }
 
    static final class LiveBadgeCorner extends JComponent {
         private String text = "LIVE";
         private int scale = 1;
 
+        private Font badgeFont;
+        private Font badgeFontBase;
+        private Dimension preferredSize;
+
         LiveBadgeCorner(String text, int scale) {
             setOpaque(false);
             update(text, scale);
         }
 
         void update(String text, int scale) {
-            this.text = (text == null || text.isBlank()) ? "LIVE" : text;
-            this.scale = Math.max(1, scale);
-            revalidate();
-            repaint();
+            String t = (text == null || text.isBlank()) ? "LIVE" : text;
+            int s = Math.max(1, scale);
+            if (t.equals(this.text) && s == this.scale && preferredSize != null) return;
+            this.text = t;
+            this.scale = s;
+            this.badgeFont = null;
+            this.preferredSize = null;
+            // no revalidate/repaint: the owning handle repositions the badge and repaints its rectangles
+        }
+
+        /** Bold badge font derived from the component font, cached until either changes. */
+        private Font badgeFont() {
+            Font base = getFont();
+            if (badgeFont == null || base != badgeFontBase) {
+                badgeFontBase = base;
+                badgeFont = badgeFont(base, scale);
+                preferredSize = null;
+            }
+            return badgeFont;
         }
 
         @Override
         public Dimension getPreferredSize() {
+            Font f = badgeFont();
+            if (preferredSize == null) {
+                preferredSize = badgeSize(getFontMetrics(f), text, scale);
+            }
+            return new Dimension(preferredSize);
+        }
+
+        /** Badge font for the given base font; also used by {@link EditorBadgePainter}. */
+        static Font badgeFont(Font base, int scale) {
+            return base.deriveFont(Font.BOLD, 12f * scale);
+        }
+
+        /** Badge size for the given text, measured with the metrics of {@link #badgeFont}. */
+        static Dimension badgeSize(FontMetrics fm, String text, int scale) {
             int pad = 6 * scale;
-            Font f = getFont().deriveFont(Font.BOLD, 12f * scale);
-            FontMetrics fm = getFontMetrics(f);
             int w = fm.stringWidth(text) + pad * 2 + 4 * scale;
             int h = fm.getHeight() + pad * 2;
             return new Dimension(Math.max(64, w), Math.max(28, h));
@@ -64,21 +99,7 @@ public final class EditorOverlayInstaller implements EditorFactoryListener {
         protected void paintComponent(Graphics g0) {
             Graphics2D g = (Graphics2D) g0.create();
             try {
-                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                int w = getWidth();
-                int h = getHeight();
-                int pad = 6 * scale;
-                int radius = 12 * scale;
-
-                g.setColor(new Color(255, 0, 0, 180));
-                g.fillRoundRect(0, 0, w - 1, h - 1, radius, radius);
-
-                g.setFont(getFont().deriveFont(Font.BOLD, 12f * scale));
-                g.setColor(Color.WHITE);
-                FontMetrics fm = g.getFontMetrics();
-                int tx = pad;
-                int ty = h - pad - fm.getDescent() + 1;
-                g.drawString(text, tx, ty);
+                BadgeImageCache.paint(g, text, scale, badgeFont(), getWidth(), getHeight());
             } finally {
                 g.dispose();
             }
@@ -0,0 +1,132 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled form of the "file rules" setting: warnings that only apply to part of a
+ * repository. One rule per line, path globs and branch patterns separated by {@code ->}:
+ * <pre>
+ * config/**, migrations/** -> prod, release/*
+ * deploy/*.yml -> upstream:origin/prod
+ * </pre>
+ * Paths are relative to the repository root and use the glob syntax of
+ * {@link BranchMatcher} ({@code *} within a segment, {@code **} across segments), except
+ * that they are matched case-sensitively, like git matches paths, and that
+ * {@code **}{@code /} also matches no directory: {@code **}{@code /*.sql} covers
+ * {@code x.sql} at the root. Unlike in {@code .gitignore}, a glob without {@code /} is
+ * matched against the whole path, not in every directory: {@code *.yml} only covers files
+ * at the root, {@code **}{@code /*.yml} covers them everywhere. Each line holds exactly one {@code ->}. Regular expressions are accepted as well; {@code upstream:}
+ * and {@code remote:} are not, they only make sense on the branch side, which accepts
+ * everything the warn branches setting does. Blank lines and lines starting with
+ * {@code #} are ignored. Immutable.
+ */
+final class FileRules {
+
+    static final FileRules NONE = new FileRules(List.of());
+
+    private static final String ARROW = "->";
+
+    private record Rule(Paths paths, BranchMatcher branches) {}
+
+    /** The path side of a rule: globs and names match the whole path, regexes anywhere in it. */
+    private record Paths(@Nullable Pattern globs, List<Pattern> regexes) {
+
+        static @Nullable Paths compile(String spec) {
+            List<String> globs = new ArrayList<>();
+            List<Pattern> regexes = new ArrayList<>();
+            for (String raw : spec.split(",")) {
+                String entry = raw.trim();
+                if (entry.isEmpty() || BranchMatcher.isScoped(entry)) continue; // rejected by validate()
+                try {
+                    if (BranchMatcher.isRegex(entry)) {
+                        regexes.add(Pattern.compile(entry));
+                    } else {
+                        globs.add(BranchMatcher.globToRegex(entry, true));
+                    }
+                } catch (PatternSyntaxException ignored) {
+                    // rejected by validate()
+                }
+            }
+            if (globs.isEmpty() && regexes.isEmpty()) return null;
+            Pattern combined = globs.isEmpty() ? null : Pattern.compile("(?:" + String.join(")|(?:", globs) + ")");
+            return new Paths(combined, List.copyOf(regexes));
+        }
+
+        boolean matches(String path) {
+            if (globs != null && globs.matcher(path).matches()) return true;
+            for (Pattern regex : regexes) {
+                if (regex.matcher(path).find()) return true;
+            }
+            return false;
+        }
+    }
+
+    private final List<Rule> rules;
+
+    private FileRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    static FileRules compile(@Nullable String spec) {
+        if (spec == null || spec.isBlank()) return NONE;
+        List<Rule> rules = new ArrayList<>();
+        for (String raw : spec.split("\n")) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int arrow = line.indexOf(ARROW);
+            if (arrow < 0 || line.indexOf(ARROW, arrow + ARROW.length()) >= 0) continue; // rejected by validate()
+            Paths paths = Paths.compile(line.substring(0, arrow));
+            BranchMatcher branches = BranchMatcher.compile(line.substring(arrow + ARROW.length()));
+            if (paths != null && branches.size() > 0) rules.add(new Rule(paths, branches));
+        }
+        return rules.isEmpty() ? NONE : new FileRules(List.copyOf(rules));
+    }
+
+    /** @return a human readable problem with {@code spec}, or {@code null} if every rule compiles */
+    static @Nullable String validate(@Nullable String spec) {
+        if (spec == null) return null;
+        for (String raw : spec.split("\n")) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int arrow = line.indexOf(ARROW);
+            if (arrow < 0) return "File rule '" + line + "' has no '" + ARROW + "' between paths and branches";
+            if (line.indexOf(ARROW, arrow + ARROW.length()) >= 0) {
+                return "File rule '" + line + "' has more than one '" + ARROW + "'; put each rule on a line of its own";
+            }
+            String paths = line.substring(0, arrow);
+            String branches = line.substring(arrow + ARROW.length());
+            if (paths.isBlank() || branches.isBlank()) return "File rule '" + line + "' needs paths and branches";
+            for (String path : paths.split(",")) {
+                if (BranchMatcher.isScoped(path.trim())) {
+                    return "File rule '" + line + "': 'upstream:' and 'remote:' belong after '" + ARROW + "'";
+                }
+            }
+            String problem = BranchMatcher.validate(paths);
+            if (problem == null) problem = BranchMatcher.validate(branches);
+            if (problem != null) return problem;
+        }
+        return null;
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @param path file path relative to the repository root, {@code /} separated
+     * @return the name {@code head} matched by the first rule covering {@code path}, or {@code null}
+     */
+    @Nullable String match(String path, RepoHead head) {
+        for (Rule rule : rules) {
+            if (!rule.paths().matches(path)) continue;
+            String match = head.firstMatch(rule.branches());
+            if (match != null) return match;
+        }
+        return null;
+    }
+}
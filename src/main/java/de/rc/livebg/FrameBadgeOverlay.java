@@ -0,0 +1,128 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The badge components of one IDE frame. Badges are added to the frame's layered pane
+ * once and then reused: an editor's {@link EditorBadgeHandle} leases one while its badge
+ * is shown and hands it back when it is hidden, so moving the badge to another editor
+ * only changes its bounds. With a badge on the focused editor only, a frame needs a
+ * single component; each further split showing a badge at the same time adds one.
+ * <p>
+ * Nothing here revalidates the layered pane: the pane has no layout manager and the
+ * badges are positioned explicitly, so callers repaint just the rectangles a badge left
+ * and entered. An idle badge stays in the pane with empty bounds; beyond {@link #MAX_IDLE}
+ * idle badges are removed, so closing many editors does not leave as many parked badges.
+ * <p>
+ * The overlay is owned by the project service, but it disposes itself as soon as its
+ * window is closed (the root pane stops being displayable), so a closed detached editor
+ * window is not kept reachable until the project closes. The handles leasing its badges
+ * are disposed with it and report the lost badge (see {@link EditorBadgeHandle#obtain}),
+ * so a window shown again gets new ones. EDT only.
+ */
+final class FrameBadgeOverlay implements Disposable {
+
+    private static final String KEY = "rc.live.frameOverlay";
+    /** Idle badges kept for reuse; enough for every split of a frame to move its badge at once. */
+    static final int MAX_IDLE = 4;
+
+    private final JRootPane root;
+    private final JLayeredPane layered;
+    private final List<EditorOverlayInstaller.LiveBadgeCorner> all = new ArrayList<>();
+    private final Deque<EditorOverlayInstaller.LiveBadgeCorner> idle = new ArrayDeque<>();
+    private final Set<EditorBadgeHandle> users = new LinkedHashSet<>();
+    private final HierarchyListener windowClosed = e -> {
+        if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0 && !e.getComponent().isDisplayable()) {
+            Disposer.dispose(this);
+        }
+    };
+    private boolean disposed;
+
+    private FrameBadgeOverlay(JRootPane root, JLayeredPane layered) {
+        this.root = root;
+        this.layered = layered;
+        root.putClientProperty(KEY, this);
+        root.addHierarchyListener(windowClosed);
+    }
+
+    /** The overlay of the given frame, created (and owned by {@code parent}) if needed. */
+    static FrameBadgeOverlay of(JRootPane root, Disposable parent) {
+        Object o = root.getClientProperty(KEY);
+        if (o instanceof FrameBadgeOverlay) {
+            FrameBadgeOverlay existing = (FrameBadgeOverlay) o;
+            if (existing.layered == root.getLayeredPane()) return existing;
+            Disposer.dispose(existing); // the layered pane was replaced
+        }
+
+        FrameBadgeOverlay overlay = new FrameBadgeOverlay(root, root.getLayeredPane());
+        Disposer.register(parent, overlay);
+        return overlay;
+    }
+
+    JLayeredPane layered() {
+        return layered;
+    }
+
+    boolean isDisposed() {
+        return disposed;
+    }
+
+    /** A badge for exclusive use by {@code user} until {@link #release}; an idle one if there is any. */
+    EditorOverlayInstaller.LiveBadgeCorner acquire(EditorBadgeHandle user) {
+        users.add(user);
+        EditorOverlayInstaller.LiveBadgeCorner badge = idle.pollFirst();
+        if (badge == null) {
+            badge = new EditorOverlayInstaller.LiveBadgeCorner("LIVE", 1);
+            badge.setBounds(0, 0, 0, 0);
+            layered.add(badge, JLayeredPane.DRAG_LAYER, 0);
+            all.add(badge);
+        } else if (layered.getPosition(badge) != 0) {
+            layered.moveToFront(badge);
+        }
+        return badge;
+    }
+
+    /** Parks the badge with empty bounds, repainting only the area it covered. */
+    void release(EditorBadgeHandle user, EditorOverlayInstaller.LiveBadgeCorner badge) {
+        users.remove(user);
+        Rectangle bounds = badge.getBounds();
+        badge.setBounds(0, 0, 0, 0);
+        layered.repaint(bounds);
+        if (disposed) return;
+        if (idle.size() < MAX_IDLE) {
+            idle.addFirst(badge);
+        } else {
+            layered.remove(badge);
+            all.remove(badge);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (disposed) return;
+        disposed = true;
+        for (EditorBadgeHandle user : new ArrayList<>(users)) user.overlayDisposed();
+        users.clear();
+        for (EditorOverlayInstaller.LiveBadgeCorner badge : all) {
+            Rectangle bounds = badge.getBounds();
+            layered.remove(badge);
+            if (!bounds.isEmpty()) layered.repaint(bounds);
+        }
+        all.clear();
+        idle.clear();
+        root.removeHierarchyListener(windowClosed);
+        if (root.getClientProperty(KEY) == this) root.putClientProperty(KEY, null);
+    }
+}
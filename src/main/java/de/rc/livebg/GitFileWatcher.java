@@ -0,0 +1,57 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.vfs.AsyncFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Picks HEAD, ref, packed-refs and config changes out of VFS batches. Runs in the
+ * platform's background pre-processing of VFS events; each event costs a few hash lookups
+ * in {@link WatchedGitPaths}. The affected repositories are only handed to
+ * {@link BranchWarnerCoordinator} after the batch is applied, which re-reads each of
+ * them once and notifies the projects whose state actually changed. A newly created
+ * {@code .git} is reported as well, so projects can discover the new repository.
+ */
+public final class GitFileWatcher implements AsyncFileListener {
+
+    @Override
+    public @Nullable ChangeApplier prepareChange(@NotNull List<? extends VFileEvent> events) {
+        BranchWarnerCoordinator coordinator = BranchWarnerCoordinator.getInstanceIfCreated();
+        if (coordinator == null) return null;
+        WatchedGitPaths index = coordinator.watchedPaths();
+        boolean watching = !index.isEmpty();
+
+        Set<Path> affected = null;
+        Set<Path> newRepos = null;
+        for (VFileEvent ev : events) {
+            if (ev instanceof VFileCreateEvent create && ".git".equals(create.getChildName())) {
+                if (newRepos == null) newRepos = new HashSet<>();
+                newRepos.add(Path.of(ev.getPath()).getParent());
+                continue;
+            }
+            if (!watching) continue;
+            Set<Path> dirs = index.match(ev.getPath());
+            if (dirs.isEmpty()) continue;
+            if (affected == null) affected = new HashSet<>();
+            affected.addAll(dirs);
+        }
+        if (affected == null && newRepos == null) return null;
+
+        Set<Path> changed = affected;
+        Set<Path> created = newRepos;
+        return new ChangeApplier() {
+            @Override
+            public void afterVfsChange() {
+                if (changed != null) coordinator.gitFilesChanged(changed);
+                if (created != null) created.forEach(coordinator::gitDirCreated);
+            }
+        };
+    }
+}
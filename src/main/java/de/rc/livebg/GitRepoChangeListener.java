@@ -0,0 +1,26 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.project.Project;
+import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryChangeListener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Forwards Git4Idea repository updates (checkout, rebase, fetch, ...) to the
+ * project's {@link BranchStateService}. Registered in {@code git4idea.xml} so it
+ * is only loaded when the Git plugin is present.
+ */
+public final class GitRepoChangeListener implements GitRepositoryChangeListener {
+
+    private final Project project;
+
+    public GitRepoChangeListener(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void repositoryChanged(@NotNull GitRepository repository) {
+        if (project.isDisposed()) return;
+        project.getService(BranchStateService.class).requestRecompute(RecomputeTrigger.GIT);
+    }
+}
@@ -0,0 +1,182 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads {@code HEAD} straight from disk for repositories Git4Idea does not report.
+ * Handles {@code .git} directories as well as {@code .git} files with a
+ * {@code gitdir:} pointer (linked worktrees, submodules).
+ * <p>
+ * Every file is parsed at most once per change: results are cached together with the
+ * file's stat (mtime, size, file key) and a lookup with an unchanged stat costs a single
+ * {@code stat} call and no read.
+ */
+final class HeadReader {
+
+    static final String HEADS_PREFIX = "refs/heads/";
+
+    /**
+     * Parsed {@code HEAD}. {@code ref} is the full symbolic ref (e.g. {@code refs/heads/feature/prod}),
+     * or {@code null} when HEAD is detached, in which case {@code sha} holds the commit.
+     */
+    record Head(@Nullable String ref, @Nullable String sha) {
+
+        boolean isDetached() {
+            return ref == null;
+        }
+
+        /** Short branch name ({@code feature/prod}), or {@code null} if HEAD is detached or not on a branch. */
+        @Nullable String branchName() {
+            return (ref != null && ref.startsWith(HEADS_PREFIX)) ? ref.substring(HEADS_PREFIX.length()) : null;
+        }
+    }
+
+    /** What a cached file is keyed on; equal stats mean the file is taken as unchanged. */
+    record Stat(FileTime mtime, long size, Object fileKey) {
+        static @Nullable Stat of(Path file) {
+            try {
+                BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!a.isRegularFile()) return null;
+                return new Stat(a.lastModifiedTime(), a.size(), a.fileKey());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private record Cached<T>(Stat stat, T value) {}
+
+    private final Map<Path, Cached<Head>> heads = new ConcurrentHashMap<>();
+    private final Map<Path, Cached<Path>> gitDirs = new ConcurrentHashMap<>();
+    /** Ref index per git directory; worktrees of one repository map to the same instance. */
+    private final Map<Path, RefIndex> refIndexes = new ConcurrentHashMap<>();
+    /** Ref index per common directory, see {@link #commonDir}. */
+    private final Map<Path, RefIndex> sharedRefIndexes = new ConcurrentHashMap<>();
+
+    /** Total size of the actual file reads, i.e. cache misses. */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Resolves {@code <workTree>/.git} to the actual git directory, following a
+     * {@code gitdir: <path>} pointer file if necessary.
+     */
+    @Nullable Path resolveGitDir(Path workTree) {
+        Path dotGit = workTree.resolve(".git");
+        if (Files.isDirectory(dotGit)) return dotGit;
+
+        Stat stat = Stat.of(dotGit);
+        if (stat == null) {
+            gitDirs.remove(dotGit);
+            return null;
+        }
+        Cached<Path> c = gitDirs.get(dotGit);
+        if (c != null && c.stat().equals(stat)) return c.value();
+
+        Path target = null;
+        String text = readText(dotGit);
+        if (text != null && text.startsWith("gitdir:")) {
+            target = workTree.resolve(text.substring("gitdir:".length()).trim()).normalize();
+        }
+        gitDirs.put(dotGit, new Cached<>(stat, target));
+        return target;
+    }
+
+    /** Parses a {@code HEAD} file, re-reading it only when its stat changed. */
+    @Nullable Head readHead(Path headFile) {
+        Stat stat = Stat.of(headFile);
+        if (stat == null) {
+            heads.remove(headFile);
+            return null;
+        }
+        Cached<Head> c = heads.get(headFile);
+        if (c != null && c.stat().equals(stat)) return c.value();
+
+        Head head = parseHead(readText(headFile));
+        heads.put(headFile, new Cached<>(stat, head));
+
+        // HEAD moved, loose refs may have been written alongside it
+        RefIndex refs = refIndexes.get(headFile.getParent());
+        if (refs != null) refs.invalidateLoose();
+        return head;
+    }
+
+    /** Stat of {@code headFile} when it was last parsed, or {@code null} if it was never read. */
+    @Nullable Stat lastStat(Path headFile) {
+        Cached<Head> c = heads.get(headFile);
+        return (c != null) ? c.stat() : null;
+    }
+
+    /**
+     * HEAD of the repository at {@code gitDir} as a {@link RepoHead}, or {@code null} if it
+     * cannot be read or points at something other than a branch.
+     */
+    @Nullable RepoHead repoHead(Path gitDir) {
+        Head head = readHead(gitDir.resolve("HEAD"));
+        if (head == null) return null;
+        if (head.isDetached()) return RepoHead.detachedAt(refIndex(gitDir).namesFor(head.sha()));
+        String branch = head.branchName();
+        return (branch != null) ? RepoHead.onBranch(branch) : null;
+    }
+
+    /** Ref index of the repository owning {@code gitDir}; linked worktrees share the main repository's. */
+    RefIndex refIndex(Path gitDir) {
+        return refIndexes.computeIfAbsent(gitDir, d -> sharedRefIndexes.computeIfAbsent(commonDir(d), RefIndex::new));
+    }
+
+    /**
+     * Git files of {@code gitDir} changed. A branch created or moved next to a detached HEAD
+     * (a fetch, {@code git branch -f}) only writes a loose ref, so the names of the detached
+     * commit are looked up again on the next read.
+     */
+    void refsChanged(Path gitDir) {
+        RefIndex refs = refIndexes.get(gitDir);
+        if (refs != null) refs.invalidateLoose();
+    }
+
+    /** Directory holding refs, packed-refs and config; differs from {@code gitDir} for linked worktrees. */
+    static Path commonDir(Path gitDir) {
+        Path pointer = gitDir.resolve("commondir");
+        try {
+            if (Files.isRegularFile(pointer)) {
+                String rel = new String(Files.readAllBytes(pointer), StandardCharsets.UTF_8).trim();
+                if (!rel.isEmpty()) return gitDir.resolve(rel).normalize();
+            }
+        } catch (IOException ignored) {
+            // treat as a regular repository
+        }
+        return gitDir;
+    }
+
+    long bytesRead() {
+        return bytesRead.get();
+    }
+
+    static @Nullable Head parseHead(@Nullable String text) {
+        if (text == null || text.isEmpty()) return null;
+        if (text.startsWith("ref:")) {
+            String ref = text.substring("ref:".length()).trim();
+            return ref.isEmpty() ? null : new Head(ref, null);
+        }
+        return new Head(null, text);
+    }
+
+    private @Nullable String readText(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            bytesRead.addAndGet(bytes.length);
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Last resolved HEAD per repository of the project, kept in the workspace file so the
+ * badge can be painted right at startup, before discovery and Git4Idea are done.
+ * <p>
+ * Each entry carries the branch's upstream and remotes, so {@code upstream:} and
+ * {@code remote:} rules apply to the cached badge as well, and the mtime and size
+ * {@code HEAD} and {@code config} had when it was recorded. At startup only entries whose
+ * two files still have that stat are used, which costs two {@code stat} calls per
+ * repository and no read; the live evaluation that follows confirms or corrects them.
+ * The {@code stat} calls run in parallel on the coordinator's IO pool with its read
+ * deadline and at most one per file, so a stalled mount neither holds up the shared
+ * scheduler nor collects blocked threads. Recording needs no {@code stat} of its own.
+ */
+@Service(Service.Level.PROJECT)
+@State(
+        name = "BranchWarnerLastState",
+        storages = @Storage(StoragePathMacros.WORKSPACE_FILE)
+)
+public final class LastStateCache implements PersistentStateComponent<LastStateCache.State> {
+
+    public static final class State {
+        public List<Entry> entries = new ArrayList<>();
+    }
+
+    public static final class Entry {
+        public String workTree = "";
+        public String headFile = "";
+        /** Names of the HEAD, separated by {@code '\n'}. */
+        public String names = "";
+        public boolean detached;
+        /** Upstream of the branch in short form, empty if it has none. */
+        public String upstream = "";
+        /**
+         * One remote per line: its name, then its URLs, separated by {@code '\t'}. The URLs
+         * carry no credentials, {@link GitConfigIndex} drops them while parsing.
+         */
+        public String remotes = "";
+        public long headMtime;
+        public long headSize;
+        public String configFile = "";
+        /** {@code -1} if there was no {@code config}. */
+        public long configMtime = -1;
+        public long configSize = -1;
+    }
+
+    private record Recorded(Path workTree, Path headFile, RepoHead head, long headMtime, long headSize,
+                            Path configFile, long configMtime, long configSize) {}
+
+    private volatile List<Recorded> recorded = List.of();
+    private volatile Map<Path, RepoHead> lastHeads = Map.of();
+
+    @Override
+    public @Nullable State getState() {
+        State state = new State();
+        for (Recorded r : recorded) {
+            Entry e = new Entry();
+            e.workTree = r.workTree().toString();
+            e.headFile = r.headFile().toString();
+            e.names = String.join("\n", r.head().names());
+            e.detached = r.head().detached();
+            e.upstream = (r.head().upstream() != null) ? r.head().upstream() : "";
+            e.remotes = formatRemotes(r.head().remotes());
+            e.headMtime = r.headMtime();
+            e.headSize = r.headSize();
+            e.configFile = r.configFile().toString();
+            e.configMtime = r.configMtime();
+            e.configSize = r.configSize();
+            state.entries.add(e);
+        }
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull State state) {
+        List<Recorded> list = new ArrayList<>();
+        for (Entry e : state.entries) {
+            if (e.workTree == null || e.workTree.isEmpty() || e.headFile == null || e.names == null) continue;
+            // written before the tracking was kept: its badge could miss an upstream: or remote: rule
+            if (e.configFile == null || e.configFile.isEmpty()) continue;
+            List<String> names = e.names.isEmpty() ? List.of() : Arrays.asList(e.names.split("\n"));
+            RepoHead head = e.detached ? RepoHead.detachedAt(names) : RepoHead.onBranch(names.isEmpty() ? "" : names.get(0));
+            if (!e.detached) {
+                String upstream = (e.upstream == null || e.upstream.isEmpty()) ? null : e.upstream;
+                head = head.withTracking(new GitConfigIndex.Tracking(upstream, parseRemotes(e.remotes)));
+            }
+            list.add(new Recorded(Path.of(e.workTree), Path.of(e.headFile), head, e.headMtime, e.headSize,
+                    Path.of(e.configFile), e.configMtime, e.configSize));
+        }
+        recorded = List.copyOf(list);
+    }
+
+    private static String formatRemotes(List<GitConfigIndex.Remote> remotes) {
+        StringJoiner lines = new StringJoiner("\n");
+        for (GitConfigIndex.Remote remote : remotes) {
+            StringJoiner line = new StringJoiner("\t");
+            line.add(remote.name());
+            for (String url : remote.urls()) {
+                if (url.indexOf('\t') < 0 && url.indexOf('\n') < 0) line.add(GitConfigIndex.withoutUserInfo(url));
+            }
+            lines.add(line.toString());
+        }
+        return lines.toString();
+    }
+
+    private static List<GitConfigIndex.Remote> parseRemotes(@Nullable String text) {
+        if (text == null || text.isEmpty()) return List.of();
+        List<GitConfigIndex.Remote> remotes = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String[] parts = line.split("\t");
+            if (parts[0].isEmpty()) continue;
+            remotes.add(new GitConfigIndex.Remote(parts[0], List.of(parts).subList(1, parts.length)));
+        }
+        return List.copyOf(remotes);
+    }
+
+    private static boolean unchanged(Map<Path, Optional<HeadReader.Stat>> stats, Path file, long mtime, long size) {
+        Optional<HeadReader.Stat> stat = stats.get(file);
+        if (stat == null) return false; // not checked in time
+        return stat.map(st -> st.mtime().toMillis() == mtime && st.size() == size).orElse(mtime == -1);
+    }
+
+    /**
+     * Recorded heads, by work tree, whose {@code HEAD} and {@code config} files are unchanged
+     * since they were recorded. Entries that cannot be checked within the read deadline are
+     * left out.
+     */
+    Map<Path, RepoHead> validHeads(BranchWarnerCoordinator coordinator) {
+        List<Recorded> entries = recorded;
+        Set<Path> files = new HashSet<>();
+        for (Recorded r : entries) {
+            files.add(r.headFile());
+            files.add(r.configFile());
+        }
+        // Optional.empty(): the file does not exist, which matches a config recorded as absent
+        Map<Path, Optional<HeadReader.Stat>> stats = coordinator.readAll(files, f -> Optional.ofNullable(HeadReader.Stat.of(f)));
+
+        Map<Path, RepoHead> result = new HashMap<>();
+        for (Recorded r : entries) {
+            if (unchanged(stats, r.headFile(), r.headMtime(), r.headSize())
+                    && unchanged(stats, r.configFile(), r.configMtime(), r.configSize())) {
+                result.put(r.workTree(), r.head());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the current heads (by work tree, with their git directory). Does nothing when
+     * they equal the last recorded ones, so calling this after every evaluation is cheap.
+     * <p>
+     * Never touches the disk: the stats are the ones the coordinator's guarded HEAD read
+     * saw. A repository whose {@code HEAD} was not read that way yet (or is stale) is left
+     * out until a later call; a {@code config} not seen yet is recorded as absent, which
+     * only makes the entry fail validation if the file does exist.
+     */
+    void update(Map<Path, RepoHead> heads, Map<Path, Path> gitDirs, BranchWarnerCoordinator coordinator) {
+        if (heads.equals(lastHeads)) return;
+
+        HeadReader reader = coordinator.headReader();
+        GitConfigIndex configs = coordinator.configIndex();
+        List<Recorded> list = new ArrayList<>();
+        boolean complete = true;
+        for (Map.Entry<Path, RepoHead> e : heads.entrySet()) {
+            Path gitDir = gitDirs.get(e.getKey());
+            if (gitDir == null) continue;
+            Path headFile = gitDir.resolve("HEAD");
+            HeadReader.Stat stat = reader.lastStat(headFile);
+            if (stat == null || e.getValue().stale()) {
+                complete = false;
+                continue;
+            }
+            Path configFile = GitConfigIndex.configFile(gitDir);
+            HeadReader.Stat config = configs.lastStat(configFile);
+            list.add(new Recorded(e.getKey(), headFile, e.getValue(), stat.mtime().toMillis(), stat.size(), configFile,
+                    (config != null) ? config.mtime().toMillis() : -1, (config != null) ? config.size() : -1));
+        }
+        recorded = List.copyOf(list);
+        // retried on the next evaluation until every repository could be recorded
+        lastHeads = complete ? Map.copyOf(heads) : Map.of();
+    }
+}
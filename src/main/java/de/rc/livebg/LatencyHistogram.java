@@ -0,0 +1,53 @@
+package de.rc.branchwarner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets
+ * (&lt;1 &micro;s, &lt;2 &micro;s, &lt;4 &micro;s, ... &ge;2<sup>30</sup> &micro;s).
+ * Percentiles are reported as the upper bound of their bucket.
+ */
+final class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1_000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    /** @return upper bound in microseconds of the bucket containing the given percentile (0-100) */
+    long percentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        long n = count.get();
+        if (n == 0) return "n=0";
+        return String.format("n=%d avg=%dus p50<=%dus p99<=%dus max=%dus",
+                n, totalNanos.get() / n / 1_000, percentileMicros(50), percentileMicros(99), maxNanos.get() / 1_000);
+    }
+}
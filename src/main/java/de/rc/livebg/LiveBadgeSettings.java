@@ -1,13 +1,20 @@
-
 package de.rc.branchwarner;
 
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.messages.Topic;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Persisted settings. {@link State} is only the XML bean; everything else reads the
+ * immutable {@link Snapshot}, which is rebuilt (and its matcher compiled) once per change
+ * and published through a volatile field, so readers on any thread never lock and never
+ * see a half-applied change.
+ */
 @Service(Service.Level.PROJECT)
 @State(
         name = "BranchWarnerSettings",
@@ -15,41 +22,93 @@ import org.jetbrains.annotations.Nullable;
 )
 public final class LiveBadgeSettings implements PersistentStateComponent<LiveBadgeSettings.State> {
 
+	public static final String DEFAULT_BRANCHES = "live,prod,production";
+
 	public static final class State {
-		public String branches = "live,prod,production";
+		public String branches = DEFAULT_BRANCHES;
 		public int scale = 1;
-		public String corner = "BOTTOM_RIGHT";
+		public String corner = Corner.DEFAULT.name();
+		/** Badge in the selected editor of every split and window, not only the focused one. */
+		public boolean allSplits = false;
+		public String renderMode = RenderMode.DEFAULT.name();
+		/** Ask for confirmation before committing or pushing on a warned branch. */
+		public boolean guardCommits = false;
+		/** Path-scoped warnings, see {@link FileRules}. */
+		public String fileRules = "";
 	}
 
-    private State state = new State();
+	/**
+	 * Validated, immutable view of the settings. {@code version} grows with every change,
+	 * so consumers can cheaply tell whether something derived from a snapshot is outdated.
+	 */
+	record Snapshot(long version, String branches, BranchMatcher matcher, int scale, Corner corner, boolean allSplits,
+	              RenderMode renderMode, boolean guardCommits, String fileRules, FileRules rules) {}
+
+	/** Published on the project bus after the settings changed. */
+	public interface Listener {
+		Topic<Listener> TOPIC = Topic.create("Branch Warner settings", Listener.class);
 
-    @Override
-    public @Nullable State getState() { return state; }
+		void settingsChanged();
+	}
+
+	private final Project project;
+	private volatile Snapshot snapshot = snapshotOf(new State(), 0);
 
+	public LiveBadgeSettings(Project project) {
+		this.project = project;
+	}
+
+	@Override
+	public @Nullable State getState() {
+		Snapshot s = snapshot;
+		State state = new State();
+		state.branches = s.branches();
+		state.scale = s.scale();
+		state.corner = s.corner().name();
+		state.allSplits = s.allSplits();
+		state.renderMode = s.renderMode().name();
+		state.guardCommits = s.guardCommits();
+		state.fileRules = s.fileRules();
+		return state;
+	}
 
 	@Override
 	public void loadState(@NotNull State state) {
-		this.state = state;
-		if (this.state.corner == null || this.state.corner.isBlank()) {
-			this.state.corner = "BOTTOM_RIGHT";
-		}
-		if (this.state.scale < 1) {
-			this.state.scale = 1;
-		}
+		publish(state);
 	}
 
-	
-	public @NotNull State getStateOrDefault() {
-		if (state == null) {
-			state = new State();
-		}
-		if (state.corner == null || state.corner.isBlank()) {
-			state.corner = "BOTTOM_RIGHT";
-		}
-		if (state.scale < 1) {
-			state.scale = 1;
+	/** Current settings; lock-free, safe to call from any thread. */
+	@NotNull Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/** Replaces the settings and notifies {@link Listener#TOPIC} subscribers. */
+	void update(String branches, int scale, Corner corner, boolean allSplits, RenderMode renderMode,
+	            boolean guardCommits, String fileRules) {
+		State state = new State();
+		state.branches = branches;
+		state.scale = scale;
+		state.corner = corner.name();
+		state.allSplits = allSplits;
+		state.renderMode = renderMode.name();
+		state.guardCommits = guardCommits;
+		state.fileRules = fileRules;
+		publish(state);
+	}
+
+	private void publish(State state) {
+		synchronized (this) {
+			snapshot = snapshotOf(state, snapshot.version() + 1);
 		}
-		return state;
+		project.getMessageBus().syncPublisher(Listener.TOPIC).settingsChanged();
+	}
+
+	private static Snapshot snapshotOf(State state, long version) {
+		String branches = (state.branches != null) ? state.branches.trim() : DEFAULT_BRANCHES;
+		String fileRules = (state.fileRules != null) ? state.fileRules.trim() : "";
+		return new Snapshot(version, branches, BranchMatcher.compile(branches),
+				Math.max(1, state.scale), Corner.parse(state.corner), state.allSplits,
+				RenderMode.parse(state.renderMode), state.guardCommits,
+				fileRules, FileRules.compile(fileRules));
 	}
-	
 }
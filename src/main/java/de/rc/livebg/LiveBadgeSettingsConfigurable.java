@@ -1,5 +1,6 @@
 package de.rc.branchwarner;
 
+import com.intellij.openapi.options.ConfigurationException;
 import com.intellij.openapi.options.SearchableConfigurable;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.Nls;
@@ -17,12 +18,16 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
     private JTextField branches;
     private JSpinner scale;
     private JComboBox<PositionOption> corner;
+    private JCheckBox allSplits;
+    private JComboBox<RenderOption> renderMode;
+    private JCheckBox guardCommits;
+    private JTextArea fileRules;
 
     private static final class PositionOption {
-        final String key;
+        final Corner key;
         final String label;
 
-        PositionOption(String key, String label) {
+        PositionOption(Corner key, String label) {
             this.key = key;
             this.label = label;
         }
@@ -33,6 +38,21 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
         }
     }
 
+    private static final class RenderOption {
+        final RenderMode key;
+        final String label;
+
+        RenderOption(RenderMode key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
     public LiveBadgeSettingsConfigurable(Project project) {
         this.project = project;
     }
@@ -52,12 +72,19 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
         if (panel == null) {
             panel = new JPanel(new GridBagLayout());
             branches = new JTextField();
+            branches.setToolTipText("<html>Branch names, globs or ^regex$.<br>"
+                    + "<code>upstream:origin/prod</code> matches the upstream of the current branch,<br>"
+                    + "<code>remote:production</code> the name or URL of a remote it fetches from or pushes to.</html>");
             scale = new JSpinner(new SpinnerNumberModel(1, 1, 5, 1));
             corner = new JComboBox<>(new PositionOption[]{
-                    new PositionOption("BOTTOM_RIGHT", "Bottom right (default)"),
-                    new PositionOption("BOTTOM_LEFT",  "Bottom left"),
-                    new PositionOption("TOP_RIGHT",    "Top right"),
-                    new PositionOption("TOP_LEFT",     "Top left")
+                    new PositionOption(Corner.BOTTOM_RIGHT, "Bottom right (default)"),
+                    new PositionOption(Corner.BOTTOM_LEFT,  "Bottom left"),
+                    new PositionOption(Corner.TOP_RIGHT,    "Top right"),
+                    new PositionOption(Corner.TOP_LEFT,     "Top left")
+            });
+            renderMode = new JComboBox<>(new RenderOption[]{
+                    new RenderOption(RenderMode.OVERLAY, "Overlay on the window (default)"),
+                    new RenderOption(RenderMode.EDITOR,  "Painted by the editor")
             });
 
             GridBagConstraints gbc = new GridBagConstraints();
@@ -71,7 +98,7 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
             gbc.gridx = 0;
             gbc.gridy = row;
             gbc.weightx = 0;
-            panel.add(new JLabel("Warn branches (comma separated):"), gbc);
+            panel.add(new JLabel("Warn branches (comma separated, globs and ^regex$ allowed):"), gbc);
 
             gbc.gridx = 1;
             gbc.weightx = 1;
@@ -96,6 +123,39 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
             gbc.gridx = 1;
             gbc.weightx = 1;
             panel.add(corner, gbc);
+
+            row++;
+            gbc.gridx = 0;
+            gbc.gridy = row;
+            gbc.weightx = 0;
+            panel.add(new JLabel("Badge rendering:"), gbc);
+
+            gbc.gridx = 1;
+            gbc.weightx = 1;
+            panel.add(renderMode, gbc);
+
+            row++;
+            gbc.gridx = 0;
+            gbc.gridy = row;
+            gbc.gridwidth = 2;
+            allSplits = new JCheckBox("Show in the selected editor of every split and window");
+            panel.add(allSplits, gbc);
+
+            row++;
+            gbc.gridy = row;
+            guardCommits = new JCheckBox("Ask before committing or pushing on a warned branch");
+            panel.add(guardCommits, gbc);
+
+            row++;
+            gbc.gridy = row;
+            panel.add(new JLabel("<html>File rules, one per line (path globs -> branches, e.g. config/**, migrations/** -> prod).<br>"
+                    + "Paths are case-sensitive; *.yml matches at the repository root only, **/*.yml in every directory.</html>"), gbc);
+
+            row++;
+            gbc.gridy = row;
+            fileRules = new JTextArea(4, 40);
+            panel.add(new JScrollPane(fileRules), gbc);
+            gbc.gridwidth = 1;
         }
 
         reset();
@@ -107,63 +167,62 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
 
     @Override
     public boolean isModified() {
-        LiveBadgeSettings settings = project.getService(LiveBadgeSettings.class);
-        LiveBadgeSettings.State s = settings.getStateOrDefault();
+        LiveBadgeSettings.Snapshot s = project.getService(LiveBadgeSettings.class).getSnapshot();
 
-        String branchesText = branches.getText().trim();
-        String stateBranches = (s.branches != null ? s.branches : "live,prod,production");
-        if (!branchesText.equals(stateBranches)) {
+        if (!branches.getText().trim().equals(s.branches())) {
             return true;
         }
-
-        int uiScale = (Integer) scale.getValue();
-        int stateScale = Math.max(1, s.scale);
-        if (uiScale != stateScale) {
+        if ((Integer) scale.getValue() != s.scale()) {
             return true;
         }
-
-        PositionOption sel = (PositionOption) corner.getSelectedItem();
-        String uiCornerKey = sel != null ? sel.key : "BOTTOM_RIGHT";
-
-        String stateCorner = (s.corner != null && !s.corner.isBlank())
-                ? s.corner
-                : "BOTTOM_RIGHT";
-
-        return !uiCornerKey.equalsIgnoreCase(stateCorner);
+        if (allSplits.isSelected() != s.allSplits()) {
+            return true;
+        }
+        if (selectedRenderMode() != s.renderMode()) {
+            return true;
+        }
+        if (guardCommits.isSelected() != s.guardCommits()) {
+            return true;
+        }
+        if (!fileRules.getText().trim().equals(s.fileRules())) {
+            return true;
+        }
+        return selectedCorner() != s.corner();
     }
 
     @Override
-    public void apply() {
-        LiveBadgeSettings settings = project.getService(LiveBadgeSettings.class);
-        LiveBadgeSettings.State s = settings.getStateOrDefault();
-
-        s.branches = branches.getText().trim();
-        s.scale = Math.max(1, (Integer) scale.getValue());
-
-        PositionOption sel = (PositionOption) corner.getSelectedItem();
-        String key = (sel != null && sel.key != null && !sel.key.isBlank())
-                ? sel.key
-                : "BOTTOM_RIGHT";
+    public void apply() throws ConfigurationException {
+        String problem = BranchMatcher.validate(branches.getText());
+        if (problem != null) {
+            throw new ConfigurationException(problem);
+        }
+        problem = FileRules.validate(fileRules.getText());
+        if (problem != null) {
+            throw new ConfigurationException(problem);
+        }
 
-        s.corner = key;
+        // publishes LiveBadgeSettings.Listener.TOPIC, BranchStateService re-renders from it
+        project.getService(LiveBadgeSettings.class).update(
+                branches.getText().trim(),
+                Math.max(1, (Integer) scale.getValue()),
+                selectedCorner(),
+                allSplits.isSelected(),
+                selectedRenderMode(),
+                guardCommits.isSelected(),
+                fileRules.getText().trim());
     }
 
     @Override
     public void reset() {
-        LiveBadgeSettings settings = project.getService(LiveBadgeSettings.class);
-        LiveBadgeSettings.State s = settings.getStateOrDefault();
+        LiveBadgeSettings.Snapshot s = project.getService(LiveBadgeSettings.class).getSnapshot();
 
-        branches.setText(s.branches != null ? s.branches : "live,prod,production");
-        scale.setValue(Math.max(1, s.scale));
-
-        String stateCorner = (s.corner != null && !s.corner.isBlank())
-                ? s.corner
-                : "BOTTOM_RIGHT";
+        branches.setText(s.branches());
+        scale.setValue(s.scale());
 
         PositionOption toSelect = null;
         for (int i = 0; i < corner.getItemCount(); i++) {
             PositionOption opt = corner.getItemAt(i);
-            if (opt != null && opt.key.equalsIgnoreCase(stateCorner)) {
+            if (opt != null && opt.key == s.corner()) {
                 toSelect = opt;
                 break;
             }
@@ -172,6 +231,27 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
             toSelect = corner.getItemAt(0);
         }
         corner.setSelectedItem(toSelect);
+        allSplits.setSelected(s.allSplits());
+        guardCommits.setSelected(s.guardCommits());
+        fileRules.setText(s.fileRules());
+
+        for (int i = 0; i < renderMode.getItemCount(); i++) {
+            RenderOption opt = renderMode.getItemAt(i);
+            if (opt != null && opt.key == s.renderMode()) {
+                renderMode.setSelectedItem(opt);
+                break;
+            }
+        }
+    }
+
+    private Corner selectedCorner() {
+        PositionOption sel = (PositionOption) corner.getSelectedItem();
+        return (sel != null) ? sel.key : Corner.DEFAULT;
+    }
+
+    private RenderMode selectedRenderMode() {
+        RenderOption sel = (RenderOption) renderMode.getSelectedItem();
+        return (sel != null) ? sel.key : RenderMode.DEFAULT;
     }
 
     @Override
@@ -180,5 +260,9 @@ public final class LiveBadgeSettingsConfigurable implements SearchableConfigurab
         branches = null;
         scale = null;
         corner = null;
+        allSplits = null;
+        renderMode = null;
+        guardCommits = null;
+        fileRules = null;
     }
 }
@@ -0,0 +1,69 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collapses bursts of recompute requests (checkout, rebase, ref storms) into a single
+ * delayed run. Requests arriving while a run is pending are absorbed by it.
+ * <p>
+ * The executor is shared by all projects, so a closing project {@link #cancel() cancels}
+ * its coalescer instead of shutting the executor down.
+ */
+final class RecomputeCoalescer {
+
+    private static final Logger LOG = Logger.getInstance(RecomputeCoalescer.class);
+
+    private final ScheduledExecutorService exec;
+    private final long delayMs;
+    private final Runnable task;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private volatile ScheduledFuture<?> scheduled;
+
+    RecomputeCoalescer(ScheduledExecutorService exec, long delayMs, Runnable task) {
+        this.exec = exec;
+        this.delayMs = delayMs;
+        this.task = task;
+    }
+
+    void request() {
+        schedule(delayMs);
+    }
+
+    /** Like {@link #request()} but without the delay, for single user-initiated changes. */
+    void requestNow() {
+        schedule(0);
+    }
+
+    private void schedule(long delay) {
+        if (cancelled || !pending.compareAndSet(false, true)) return;
+        try {
+            scheduled = exec.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.set(false); // executor shut down, application is closing
+        }
+    }
+
+    /** Drops a pending run and ignores all further requests. */
+    void cancel() {
+        cancelled = true;
+        ScheduledFuture<?> f = scheduled;
+        if (f != null) f.cancel(false);
+    }
+
+    private void run() {
+        pending.set(false);
+        if (cancelled) return;
+        try {
+            task.run();
+        } catch (Throwable t) {
+            LOG.warn("Branch Warner recompute failed", t);
+        }
+    }
+}
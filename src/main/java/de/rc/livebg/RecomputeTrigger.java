@@ -0,0 +1,17 @@
+package de.rc.branchwarner;
+
+/** Why a recompute was requested. Several triggers can be folded into one recompute. */
+public enum RecomputeTrigger {
+    /** Initial evaluation when the service starts. */
+    STARTUP,
+    /** Git4Idea repository change or repository mapping change. */
+    GIT,
+    /** VFS event on a watched git file. */
+    VFS,
+    /** Content roots changed or a {@code .git} appeared; repositories are discovered again. */
+    ROOTS,
+    /** Settings applied. */
+    SETTINGS,
+    /** Safety-net poll. */
+    POLL
+}
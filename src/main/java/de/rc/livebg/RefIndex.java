@@ -0,0 +1,215 @@
+package de.rc.branchwarner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Names of the refs pointing at a commit, for one repository (its common git directory),
+ * without spawning git.
+ * <p>
+ * {@code packed-refs} is memory-mapped and its ref lines are located in a single pass.
+ * Loose refs under {@code refs/} take precedence over packed entries. The reverse
+ * SHA &rarr; ref map used to name a detached HEAD is only built on first use. Everything
+ * is invalidated by the stat of {@code packed-refs}; loose refs are re-scanned after
+ * {@link #invalidateLoose()}, which {@link HeadReader} calls whenever a git file of the
+ * repository changed. Linked worktrees share the index of their common directory.
+ * <p>
+ * On Windows the file is read onto the heap instead, because a mapped file would
+ * keep git from replacing it.
+ */
+final class RefIndex {
+
+    private static final boolean MAP_FILES = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    private final Path commonDir;
+
+    private volatile Packed packed;
+    private volatile Map<String, List<String>> reverse;
+    private volatile Packed reverseSource;
+
+    RefIndex(Path commonDir) {
+        this.commonDir = commonDir;
+    }
+
+    /** Drops the reverse map so the next {@link #namesFor} re-scans loose refs. */
+    void invalidateLoose() {
+        reverse = null;
+    }
+
+    /**
+     * Short names of all refs pointing at {@code sha}, branches first, then remote
+     * branches, then tags (e.g. {@code prod}, {@code origin/prod}, {@code v1.4}).
+     * Annotated tags match the commit they peel to.
+     */
+    List<String> namesFor(String sha) {
+        Packed p = packed();
+        Map<String, List<String>> r = reverse;
+        if (r == null || p != reverseSource) {
+            r = buildReverse(p);
+            reverse = r;
+        }
+        List<String> refs = r.getOrDefault(sha, List.of());
+        List<String> names = new ArrayList<>(refs.size());
+        for (String prefix : new String[]{"refs/heads/", "refs/remotes/", "refs/tags/"}) {
+            for (String ref : refs) {
+                if (ref.startsWith(prefix)) names.add(ref.substring(prefix.length()));
+            }
+        }
+        return names;
+    }
+
+    private Map<String, List<String>> buildReverse(Packed p) {
+        Map<String, String> refs = new HashMap<>();
+        p.forEach(refs::put);
+
+        Path refsDir = commonDir.resolve("refs");
+        if (Files.isDirectory(refsDir)) {
+            try (Stream<Path> files = Files.walk(refsDir)) {
+                files.filter(Files::isRegularFile).forEach(f -> {
+                    try {
+                        String sha = new String(Files.readAllBytes(f), StandardCharsets.US_ASCII).trim();
+                        if (!sha.startsWith("ref:")) {
+                            refs.put(commonDir.relativize(f).toString().replace('\\', '/'), sha);
+                        }
+                    } catch (IOException ignored) {
+                        // ref deleted while walking
+                    }
+                });
+            } catch (IOException | UncheckedIOException ignored) {
+                // partial result is fine, the next change rebuilds it
+            }
+        }
+
+        Map<String, List<String>> result = new HashMap<>();
+        refs.forEach((ref, sha) -> result.computeIfAbsent(sha, k -> new ArrayList<>(1)).add(ref));
+        p.forEachPeeled((ref, peeled) -> result.computeIfAbsent(peeled, k -> new ArrayList<>(1)).add(ref));
+        result.values().forEach(Collections::sort);
+        reverseSource = p;
+        return result;
+    }
+
+    private Packed packed() {
+        Path file = commonDir.resolve("packed-refs");
+        Object stat = stat(file);
+        Packed p = packed;
+        if (p == null || !p.stat.equals(stat)) {
+            p = Packed.load(file, stat);
+            packed = p;
+        }
+        return p;
+    }
+
+    private static Object stat(Path file) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+            return List.of(a.lastModifiedTime(), a.size(), String.valueOf(a.fileKey()));
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /** One generation of {@code packed-refs}: the mapped bytes plus the offsets of its ref lines. */
+    private static final class Packed {
+        final Object stat;
+        final ByteBuffer buf;
+        /** Start offset of each "&lt;sha&gt; &lt;ref&gt;" line, in file order. */
+        final int[] lines;
+        final int count;
+
+        private Packed(Object stat, ByteBuffer buf, int[] lines, int count) {
+            this.stat = stat;
+            this.buf = buf;
+            this.lines = lines;
+            this.count = count;
+        }
+
+        static Packed load(Path file, Object stat) {
+            ByteBuffer buf;
+            try {
+                if (MAP_FILES) {
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                        buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    }
+                } else {
+                    buf = ByteBuffer.wrap(Files.readAllBytes(file));
+                }
+            } catch (IOException e) {
+                return new Packed(stat, ByteBuffer.allocate(0), new int[0], 0);
+            }
+
+            int[] lines = new int[64];
+            int count = 0;
+            int limit = buf.limit();
+            int pos = 0;
+            while (pos < limit) {
+                byte first = buf.get(pos);
+                if (first != '#' && first != '^' && first != '\n') {
+                    if (count == lines.length) lines = Arrays.copyOf(lines, count * 2);
+                    lines[count++] = pos;
+                }
+                while (pos < limit && buf.get(pos) != '\n') pos++;
+                pos++;
+            }
+            return new Packed(stat, buf, lines, count);
+        }
+
+        void forEach(BiConsumer<String, String> refToSha) {
+            for (int i = 0; i < count; i++) {
+                refToSha.accept(ref(lines[i]), sha(lines[i]));
+            }
+        }
+
+        /** Visits annotated tags with the commit they peel to (the following "^sha" line). */
+        void forEachPeeled(BiConsumer<String, String> refToPeeled) {
+            for (int i = 0; i < count; i++) {
+                int next = endOfLine(lines[i]) + 1;
+                if (next < buf.limit() && buf.get(next) == '^') {
+                    refToPeeled.accept(ref(lines[i]), text(next + 1, endOfLine(next)));
+                }
+            }
+        }
+
+        private String sha(int line) {
+            return text(line, refStart(line) - 1);
+        }
+
+        private String ref(int line) {
+            return text(refStart(line), endOfLine(line));
+        }
+
+        private int refStart(int line) {
+            int p = line;
+            while (p < buf.limit() && buf.get(p) != ' ') p++;
+            return p + 1;
+        }
+
+        private int endOfLine(int from) {
+            int p = from;
+            while (p < buf.limit() && buf.get(p) != '\n') p++;
+            return p;
+        }
+
+        private String text(int from, int to) {
+            byte[] b = new byte[Math.max(0, to - from)];
+            for (int i = 0; i < b.length; i++) b[i] = buf.get(from + i);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.rc.branchwarner;
+
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces badge relayouts. Window drags and splitter moves fire dozens of component
+ * events per frame; each only marks its badge dirty, and all dirty badges are
+ * repositioned together once per frame. EDT only.
+ */
+final class RelayoutScheduler {
+
+    private static final int FRAME_MS = 16;
+
+    private static final Set<EditorBadgeHandle> PENDING = new LinkedHashSet<>();
+    private static final Timer TIMER = new Timer(FRAME_MS, e -> flush());
+
+    static {
+        TIMER.setRepeats(false);
+    }
+
+    private RelayoutScheduler() {}
+
+    static void schedule(EditorBadgeHandle handle) {
+        if (PENDING.add(handle) && !TIMER.isRunning()) TIMER.start();
+    }
+
+    static void cancel(EditorBadgeHandle handle) {
+        PENDING.remove(handle);
+    }
+
+    /** Number of badges waiting for the next frame. Only read by {@code EditorBadgeHandleLeakTest}. */
+    static int pending() {
+        return PENDING.size();
+    }
+
+    private static void flush() {
+        List<EditorBadgeHandle> batch = new ArrayList<>(PENDING);
+        PENDING.clear();
+        for (EditorBadgeHandle h : batch) {
+            h.relayoutNow();
+        }
+    }
+}
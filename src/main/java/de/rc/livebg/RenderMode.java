@@ -0,0 +1,25 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+
+/** How the badge is drawn. Names are the values stored in the settings. */
+enum RenderMode {
+    /** A component on the frame's layered pane, see {@link FrameBadgeOverlay}. */
+    OVERLAY,
+    /** Painted by the editor itself, see {@link EditorBadgePainter}. */
+    EDITOR;
+
+    static final RenderMode DEFAULT = OVERLAY;
+
+    /** Parses a stored value, case-insensitively; blank or unknown values give {@link #DEFAULT}. */
+    static RenderMode parse(@Nullable String value) {
+        if (value == null || value.isBlank()) return DEFAULT;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return DEFAULT;
+        }
+    }
+}
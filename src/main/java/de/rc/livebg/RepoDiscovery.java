@@ -0,0 +1,156 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the repositories of a project on disk: for each content root the nearest
+ * enclosing repository (walking upward, so a project inside a larger repository is
+ * covered too) plus the submodules listed in that repository's {@code .gitmodules}.
+ * <p>
+ * Every directory visited on the way up is cached with its result, including "no
+ * repository", so once discovered a non-git project costs no file system access at all.
+ * The cache is only dropped by {@link #invalidate()} (content roots or Git4Idea mappings
+ * changed) or by a {@code .git} appearing near a content root ({@link #gitDirCreated}).
+ */
+final class RepoDiscovery {
+
+    record Repo(Path workTree, Path gitDir) {}
+
+    /** Cached "no enclosing repository". */
+    private static final Repo NONE = new Repo(Path.of(""), Path.of(""));
+
+    private final HeadReader headReader;
+    private final Map<Path, Repo> enclosing = new ConcurrentHashMap<>();
+    private final Map<Path, List<Repo>> submodules = new ConcurrentHashMap<>();
+    private final Set<Path> candidates = ConcurrentHashMap.newKeySet();
+    private volatile boolean dirty = true;
+
+    RepoDiscovery(HeadReader headReader) {
+        this.headReader = headReader;
+    }
+
+    void invalidate() {
+        enclosing.clear();
+        submodules.clear();
+        candidates.clear();
+        dirty = true;
+    }
+
+    /**
+     * A {@code .git} was created in {@code dir}. Invalidates the cache if that directory
+     * is a content root, lies inside one, or encloses one.
+     *
+     * @return whether the cache was invalidated
+     */
+    boolean gitDirCreated(Path dir) {
+        for (Path c : candidates) {
+            if (dir.startsWith(c) || c.startsWith(dir)) {
+                invalidate();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Repositories for the given content roots, keyed by work tree; submodules of each
+     * repository are included. Clears the dirty flag.
+     */
+    Map<Path, Path> discover(List<Path> roots) {
+        dirty = false;
+        Map<Path, Path> result = new LinkedHashMap<>();
+        try {
+            for (Path root : roots) {
+                candidates.add(root);
+                Repo repo = find(root);
+                if (repo == null) continue;
+                result.put(repo.workTree(), repo.gitDir());
+                for (Repo sub : submodulesOf(repo)) result.put(sub.workTree(), sub.gitDir());
+            }
+        } catch (RuntimeException e) {
+            dirty = true; // retry on the next recompute instead of keeping a partial result
+            throw e;
+        }
+        return result;
+    }
+
+    /** Nearest repository whose work tree is {@code dir} or one of its ancestors. */
+    @Nullable Repo find(Path dir) {
+        List<Path> visited = new ArrayList<>();
+        Repo found = NONE;
+        for (Path d = dir.toAbsolutePath().normalize(); d != null; d = d.getParent()) {
+            Repo cached = enclosing.get(d);
+            if (cached != null) {
+                found = cached;
+                break;
+            }
+            visited.add(d);
+            Path gitDir = headReader.resolveGitDir(d);
+            if (gitDir != null) {
+                found = new Repo(d, gitDir);
+                break;
+            }
+        }
+        for (Path d : visited) enclosing.put(d, found);
+        return (found != NONE) ? found : null;
+    }
+
+    /**
+     * Submodules of {@code repo}, nested ones included. Resolved outside of the map's
+     * {@code computeIfAbsent}: nested submodules recurse into this method, and a
+     * {@link ConcurrentHashMap} must not be updated from inside its own mapping function.
+     */
+    private List<Repo> submodulesOf(Repo repo) {
+        Path wt = repo.workTree();
+        List<Repo> cached = submodules.get(wt);
+        if (cached != null) return cached;
+
+        List<Repo> subs = new ArrayList<>();
+        for (String path : gitmodulePaths(wt.resolve(".gitmodules"))) {
+            Path subTree = wt.resolve(path).normalize();
+            if (subTree.equals(wt) || !subTree.startsWith(wt)) continue; // would loop
+            Path gitDir = headReader.resolveGitDir(subTree);
+            if (gitDir == null) continue; // not initialized
+            Repo sub = new Repo(subTree, gitDir);
+            subs.add(sub);
+            subs.addAll(submodulesOf(sub));
+        }
+        List<Repo> result = List.copyOf(subs);
+        cached = submodules.putIfAbsent(wt, result);
+        return (cached != null) ? cached : result;
+    }
+
+    /** {@code path = ...} values of a {@code .gitmodules} file; empty if there is none. */
+    static List<String> gitmodulePaths(Path file) {
+        if (!Files.isRegularFile(file)) return List.of();
+        List<String> paths = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String l = line.trim();
+                if (!l.startsWith("path")) continue;
+                int eq = l.indexOf('=');
+                if (eq < 0 || !l.substring(0, eq).trim().equals("path")) continue;
+                String value = l.substring(eq + 1).trim();
+                if (!value.isEmpty()) paths.add(value);
+            }
+        } catch (IOException ignored) {
+            // unreadable, treat as no submodules
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,63 @@
+package de.rc.branchwarner;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Resolved HEAD of one repository: the current branch, or for a detached HEAD every
+ * branch, remote branch and tag pointing at the checked out commit. {@code stale} marks
+ * the last known state of a repository that could not be re-read in time.
+ * <p>
+ * For a branch, {@code upstream} and {@code remotes} describe where it fetches from and
+ * pushes to (see {@link GitConfigIndex}), so rules can warn about a harmlessly named
+ * branch that tracks or pushes to production.
+ */
+record RepoHead(List<String> names, boolean detached, boolean stale,
+                @Nullable String upstream, List<GitConfigIndex.Remote> remotes) {
+
+    static RepoHead onBranch(String branch) {
+        return new RepoHead(List.of(branch), false, false, null, List.of());
+    }
+
+    static RepoHead detachedAt(List<String> names) {
+        return new RepoHead(List.copyOf(names), true, false, null, List.of());
+    }
+
+    RepoHead asStale() {
+        return stale ? this : new RepoHead(names, detached, true, upstream, remotes);
+    }
+
+    RepoHead withTracking(GitConfigIndex.Tracking tracking) {
+        return new RepoHead(names, detached, stale, tracking.upstream(), tracking.remotes());
+    }
+
+    /**
+     * @return the first name matching {@code matcher}; failing that, for a branch whose
+     * upstream or remote matches an {@code upstream:} / {@code remote:} rule, the branch
+     * with that upstream or remote; otherwise {@code null}
+     */
+    @Nullable String firstMatch(BranchMatcher matcher) {
+        for (String name : names) {
+            if (matcher.matches(name)) return name;
+        }
+        if (detached || names.isEmpty()) return null;
+
+        if (upstream != null && matcher.matchesUpstream(upstream)) {
+            return names.get(0) + " → " + upstream;
+        }
+        for (GitConfigIndex.Remote remote : remotes) {
+            if (matcher.matchesRemote(remote.name())) return names.get(0) + " → " + remote.name();
+            for (String url : remote.urls()) {
+                if (matcher.matchesRemote(url)) return names.get(0) + " → " + remote.name();
+            }
+        }
+        return null;
+    }
+
+    /** Badge text for {@code name}, marking detached checkouts and outdated state. */
+    String displayText(String name) {
+        String text = detached ? name.toUpperCase() + " (DETACHED)" : name.toUpperCase();
+        return stale ? text + " (STALE)" : text;
+    }
+}
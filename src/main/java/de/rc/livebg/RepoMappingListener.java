@@ -0,0 +1,23 @@
+package de.rc.branchwarner;
+
+import com.intellij.dvcs.repo.VcsRepositoryMappingListener;
+import com.intellij.openapi.project.Project;
+
+/**
+ * Invalidates the repository root index of {@link BranchStateService} when
+ * repositories are added to or removed from the project.
+ */
+public final class RepoMappingListener implements VcsRepositoryMappingListener {
+
+    private final Project project;
+
+    public RepoMappingListener(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void mappingChanged() {
+        if (project.isDisposed()) return;
+        project.getService(BranchStateService.class).repositoriesChanged();
+    }
+}
@@ -0,0 +1,41 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Maps files to the repository that owns them. The roots form a trie over
+ * {@link VirtualFile} ancestry: a lookup follows the parent chain of the file and
+ * stops at the first known root, which is the innermost (longest-prefix) repository.
+ * The cost is bounded by the path depth, independent of the number of repositories.
+ */
+final class RepoRootIndex {
+
+    private volatile Set<VirtualFile> roots = Set.of();
+    private volatile boolean dirty = true;
+
+    /** Marks the index stale; it is rebuilt on the next {@link #isDirty()} check by the owner. */
+    void invalidate() {
+        dirty = true;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void rebuild(Collection<VirtualFile> repoRoots) {
+        roots = Set.copyOf(repoRoots);
+        dirty = false;
+    }
+
+    @Nullable VirtualFile rootFor(@Nullable VirtualFile file) {
+        Set<VirtualFile> r = roots;
+        for (VirtualFile f = file; f != null; f = f.getParent()) {
+            if (r.contains(f)) return f;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+
+/** Help | Diagnostic Tools | Branch Warner Diagnostics: live counters of the current project. */
+public final class ShowDiagnosticsAction extends AnAction {
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        e.getPresentation().setEnabledAndVisible(project != null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+        new DiagnosticsDialog(project).show();
+    }
+
+    private static final class DiagnosticsDialog extends DialogWrapper {
+
+        private final BranchWarnerMetrics metrics;
+        private final JTextArea text = new JTextArea(16, 90);
+        private final Timer refresh = new Timer(1000, e -> update());
+
+        DiagnosticsDialog(Project project) {
+            super(project, false);
+            this.metrics = project.getService(BranchStateService.class).getMetrics();
+            setTitle("Branch Warner Diagnostics");
+            setModal(false);
+            init();
+            refresh.start();
+        }
+
+        private void update() {
+            text.setText(metrics.describe());
+        }
+
+        @Override
+        protected @Nullable JComponent createCenterPanel() {
+            text.setEditable(false);
+            text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, text.getFont().getSize()));
+            update();
+            return new JScrollPane(text);
+        }
+
+        @Override
+        protected void dispose() {
+            refresh.stop();
+            super.dispose();
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package de.rc.branchwarner;
 
+import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
 import org.jetbrains.annotations.NotNull;
 
-public final class Startup implements StartupActivity {
+/**
+ * Creates the project's {@link BranchStateService} and kicks off its background start.
+ * Does no disk access itself, and being {@link DumbAware} it does not wait for indexing.
+ */
+public final class Startup implements StartupActivity, DumbAware {
     @Override
     public void runActivity(@NotNull Project project) {
-        project.getService(BranchStateService.class);
-        System.out.println("[BranchWarner] Startup -> service initialized for " + project.getName());
+        long now = System.nanoTime();
+        project.getService(BranchStateService.class).start(now);
     }
 }
@@ -0,0 +1,75 @@
+package de.rc.branchwarner;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the git files whose changes matter to some open project: {@code HEAD} of each
+ * tracked git directory plus {@code packed-refs}, {@code config} and everything under
+ * {@code refs/} of its common directory. {@link GitFileWatcher} checks every VFS event
+ * against it with one hash lookup, plus one per {@code /refs/} segment in the path, so
+ * unrelated events are rejected in constant time.
+ * <p>
+ * The maps are rebuilt copy-on-write when the set of git directories changes, which is
+ * rare compared to lookups, so readers never lock.
+ */
+final class WatchedGitPaths {
+
+    private static final String REFS = "/refs";
+
+    private volatile Map<String, Set<Path>> fileIndex = Map.of();
+    private volatile Map<String, Set<Path>> refDirIndex = Map.of();
+
+    /** Replaces the indexed git directories. */
+    synchronized void reset(Collection<Path> gitDirs) {
+        Map<String, Set<Path>> files = new HashMap<>();
+        Map<String, Set<Path>> refDirs = new HashMap<>();
+        for (Path gitDir : gitDirs) {
+            Path common = HeadReader.commonDir(gitDir);
+            add(files, key(gitDir.resolve("HEAD")), gitDir);
+            add(files, key(common.resolve("packed-refs")), gitDir);
+            add(files, key(common.resolve("config")), gitDir);
+            add(refDirs, key(common) + REFS, gitDir);
+        }
+        fileIndex = freeze(files);
+        refDirIndex = freeze(refDirs);
+    }
+
+    /**
+     * @param path system-independent path of a VFS event
+     * @return git directories affected by a change of {@code path}; empty for unrelated files
+     */
+    Set<Path> match(String path) {
+        Set<Path> dirs = fileIndex.get(path);
+        if (dirs != null) return dirs;
+
+        // "/refs/" may also occur above the git directory (~/refs/project/.git/refs/heads/x),
+        // so each occurrence is tried as the end of a known common directory
+        for (int i = path.indexOf(REFS + "/"); i >= 0; i = path.indexOf(REFS + "/", i + 1)) {
+            dirs = refDirIndex.get(path.substring(0, i + REFS.length()));
+            if (dirs != null) return dirs;
+        }
+        return Set.of();
+    }
+
+    boolean isEmpty() {
+        return fileIndex.isEmpty();
+    }
+
+    private static void add(Map<String, Set<Path>> index, String key, Path gitDir) {
+        index.computeIfAbsent(key, k -> new HashSet<>()).add(gitDir);
+    }
+
+    private static Map<String, Set<Path>> freeze(Map<String, Set<Path>> index) {
+        index.replaceAll((k, v) -> Set.copyOf(v));
+        return Map.copyOf(index);
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,199 @@
+package de.rc.branchwarner;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.util.Disposer;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Opens and closes 1,000 editors in one window, in rounds of {@value #OPEN_AT_ONCE} open at
+ * the same time, while the window and the service owning the badges stay alive. After each
+ * round no badge is left showing, the window keeps at most {@link FrameBadgeOverlay#MAX_IDLE}
+ * parked badges, the listeners on the layered pane and the viewports are back to what Swing
+ * itself registers, and no relayout is still queued in {@link RelayoutScheduler}. At the end
+ * nothing holds any closed editor, and disposing the service removes the last badge and the
+ * overlay's listener on the root pane. A closed window must not be held by the service either,
+ * and if it is shown again its editors get new badges.
+ */
+public class EditorBadgeHandleLeakTest {
+
+    private static final int EDITORS = 1_000;
+    private static final int OPEN_AT_ONCE = 50;
+
+    @Test
+    public void closedEditorsAreNotRetained() throws Exception {
+        Disposable service = Disposer.newDisposable("service");
+        JRootPane window = new JRootPane();
+        List<WeakReference<Object>> closed = new ArrayList<>();
+        int[] baseline = new int[3];
+        try {
+            onEdt(() -> {
+                window.setSize(1200, 800);
+                window.setFont(new Font(Font.DIALOG, Font.PLAIN, 13)); // no Look and Feel in a unit test
+                baseline[0] = window.getLayeredPane().getComponentListeners().length;
+                baseline[1] = window.getHierarchyListeners().length;
+                baseline[2] = new JScrollPane(new JPanel()).getViewport().getComponentListeners().length;
+            });
+            for (int round = 0; round < EDITORS / OPEN_AT_ONCE; round++) {
+                onEdt(() -> {
+                    for (int i = 0; i < OPEN_AT_ONCE; i++) {
+                        JComponent content = new JPanel();
+                        window.getContentPane().add(new JScrollPane(content));
+                        EditorBadgeHandle handle = EditorBadgeHandle.obtain(editor(content), service, () -> {});
+                        assertNotNull(handle);
+                        handle.show("PROD", 1, Corner.DEFAULT);
+                        closed.add(new WeakReference<>(content));
+                        closed.add(new WeakReference<>(handle));
+                    }
+                    assertEquals("badges while open", OPEN_AT_ONCE, badges(window.getLayeredPane()).size());
+                });
+                onEdt(() -> {
+                    for (Component c : window.getContentPane().getComponents()) {
+                        JViewport viewport = ((JScrollPane) c).getViewport();
+                        EditorBadgeHandle handle = EditorBadgeHandle.of((JComponent) viewport.getView());
+                        assertNotNull(handle);
+                        RelayoutScheduler.schedule(handle); // a resize arriving just before the editor closes
+                        Disposer.dispose(handle); // as EditorOverlayInstaller.editorReleased does
+                        assertEquals("viewport listeners", baseline[2], viewport.getComponentListeners().length);
+                    }
+                    window.getContentPane().removeAll();
+
+                    List<Component> parked = badges(window.getLayeredPane());
+                    assertTrue("parked badges: " + parked.size(), parked.size() <= FrameBadgeOverlay.MAX_IDLE);
+                    for (Component badge : parked) assertTrue("badge left showing", badge.getBounds().isEmpty());
+                    assertEquals("layered pane listeners", baseline[0], window.getLayeredPane().getComponentListeners().length);
+                    assertEquals("queued relayouts", 0, RelayoutScheduler.pending());
+                });
+            }
+
+            assertCollected(closed);
+            onEdt(() -> {
+                Disposer.dispose(service);
+                assertEquals("badges after dispose", 0, badges(window.getLayeredPane()).size());
+                assertEquals("root pane listeners", baseline[1], window.getHierarchyListeners().length);
+            });
+        } finally {
+            onEdt(() -> Disposer.dispose(service));
+            window.removeAll();
+        }
+    }
+
+    private static List<Component> badges(JLayeredPane layered) {
+        List<Component> badges = new ArrayList<>();
+        for (Component c : layered.getComponents()) {
+            if (c instanceof EditorOverlayInstaller.LiveBadgeCorner) badges.add(c);
+        }
+        return badges;
+    }
+
+    @Test
+    public void closedWindowIsNotRetained() throws Exception {
+        Disposable service = Disposer.newDisposable("service");
+        List<WeakReference<Object>> closed = new ArrayList<>();
+        try {
+            onEdt(() -> {
+                JRootPane window = new JRootPane();
+                window.setSize(1200, 800);
+                window.setFont(new Font(Font.DIALOG, Font.PLAIN, 13));
+                JComponent content = new JPanel();
+                window.getContentPane().add(new JScrollPane(content));
+                EditorBadgeHandle handle = EditorBadgeHandle.obtain(editor(content), service, () -> {});
+                assertNotNull(handle);
+                handle.show("PROD", 1, Corner.DEFAULT);
+                closeWindow(window);
+                Disposer.dispose(handle);
+                closed.add(new WeakReference<>(window));
+                closed.add(new WeakReference<>(content));
+            });
+            assertCollected(closed);
+        } finally {
+            onEdt(() -> Disposer.dispose(service));
+        }
+    }
+
+    @Test
+    public void reshownWindowGetsNewBadges() throws Exception {
+        Disposable service = Disposer.newDisposable("service");
+        try {
+            onEdt(() -> {
+                JRootPane window = new JRootPane();
+                window.setSize(1200, 800);
+                window.setFont(new Font(Font.DIALOG, Font.PLAIN, 13));
+                JComponent content = new JPanel();
+                window.getContentPane().add(new JScrollPane(content));
+                Editor editor = editor(content);
+                int[] lost = new int[1];
+                EditorBadgeHandle before = EditorBadgeHandle.obtain(editor, service, () -> lost[0]++);
+                assertNotNull(before);
+                before.show("PROD", 1, Corner.DEFAULT);
+
+                closeWindow(window);
+                assertEquals("owner told the badge is gone", 1, lost[0]);
+                assertEquals("badges of the closed window", 0, badges(window.getLayeredPane()).size());
+
+                // the same root pane shown again
+                EditorBadgeHandle after = EditorBadgeHandle.obtain(editor, service, () -> lost[0]++);
+                assertNotNull(after);
+                assertTrue("stale handle reused", after != before);
+                after.show("PROD", 1, Corner.DEFAULT);
+                List<Component> badges = badges(window.getLayeredPane());
+                assertEquals("badges after the window came back", 1, badges.size());
+                assertTrue("badge not placed", !badges.get(0).getBounds().isEmpty());
+            });
+        } finally {
+            onEdt(() -> Disposer.dispose(service));
+        }
+    }
+
+    /** Window.dispose() without a native peer: removeNotify reports the root pane is no longer displayable. */
+    private static void closeWindow(JRootPane window) {
+        window.dispatchEvent(new HierarchyEvent(window, HierarchyEvent.HIERARCHY_CHANGED, window, null,
+                HierarchyEvent.DISPLAYABILITY_CHANGED));
+    }
+
+    private static void assertCollected(List<WeakReference<Object>> refs) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            System.gc();
+            if (refs.stream().allMatch(r -> r.get() == null)) return;
+            Thread.sleep(20);
+        }
+        long retained = refs.stream().filter(r -> r.get() != null).count();
+        fail(retained + " of " + refs.size() + " closed components and badge handles are still reachable");
+    }
+
+    /** An editor that only has a content component, which is all the badge handle needs. */
+    private static Editor editor(JComponent content) {
+        return (Editor) Proxy.newProxyInstance(Editor.class.getClassLoader(), new Class<?>[]{Editor.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getContentComponent" -> content;
+                    case "isDisposed" -> false;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    private static void onEdt(Runnable r) throws InterruptedException {
+        try {
+            SwingUtilities.invokeAndWait(r);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
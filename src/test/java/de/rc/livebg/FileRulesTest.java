@@ -0,0 +1,65 @@
+package de.rc.branchwarner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileRulesTest {
+
+    private static final RepoHead PROD = RepoHead.onBranch("prod");
+
+    @Test
+    public void leadingDoubleStarMatchesNoDirectory() {
+        FileRules rules = FileRules.compile("**/*.sql -> prod");
+
+        assertEquals("prod", rules.match("x.sql", PROD));
+        assertEquals("prod", rules.match("db/migrations/x.sql", PROD));
+        assertNull(rules.match("x.sql.bak", PROD));
+    }
+
+    @Test
+    public void innerDoubleStarMatchesNoDirectory() {
+        FileRules rules = FileRules.compile("config/**/prod.yml -> prod");
+
+        assertEquals("prod", rules.match("config/prod.yml", PROD));
+        assertEquals("prod", rules.match("config/eu/west/prod.yml", PROD));
+        assertNull(rules.match("configprod.yml", PROD));
+    }
+
+    @Test
+    public void pathsAreCaseSensitive() {
+        FileRules rules = FileRules.compile("Config/** , deploy.yml -> PROD");
+
+        assertEquals("prod", rules.match("Config/app.yml", PROD));
+        assertEquals("prod", rules.match("deploy.yml", PROD));
+        assertNull(rules.match("config/app.yml", PROD));
+        assertNull(rules.match("Deploy.yml", PROD));
+    }
+
+    @Test
+    public void globWithoutSlashOnlyMatchesAtTheRoot() {
+        FileRules rules = FileRules.compile("*.yml -> prod");
+
+        assertEquals("prod", rules.match("deploy.yml", PROD));
+        assertNull(rules.match("config/deploy.yml", PROD));
+    }
+
+    @Test
+    public void oneArrowPerRule() {
+        assertNotNull(FileRules.validate("a -> b -> c"));
+        assertNotNull(FileRules.validate("config/** -> prod\nx -> prod -> main"));
+        assertNull(FileRules.validate("config/** -> prod\nx -> main"));
+        assertTrue(FileRules.compile("a -> b -> c").isEmpty());
+    }
+
+    @Test
+    public void scopedEntriesOnlyOnTheBranchSide() {
+        assertNotNull(FileRules.validate("upstream:origin/prod -> prod"));
+        assertNotNull(FileRules.validate("config/**, Remote:prod -> prod"));
+        assertNull(FileRules.validate("config/** -> upstream:origin/prod, remote:prod"));
+        assertNull(FileRules.compile("upstream:origin/prod -> prod").match("upstream:origin/prod", PROD));
+    }
+}
@@ -0,0 +1,70 @@
+package de.rc.branchwarner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RepoDiscoveryTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bw-discovery").toRealPath();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+
+    /** top -> lib -> lib/vendor: submodules that have submodules of their own. */
+    @Test
+    public void nestedSubmodules() throws IOException {
+        Path top = repo(dir.resolve("top"), "lib");
+        Path lib = repo(top.resolve("lib"), "vendor");
+        Path vendor = repo(lib.resolve("vendor"));
+
+        RepoDiscovery discovery = new RepoDiscovery(new HeadReader());
+        Map<Path, Path> expected = Map.of(
+                top, top.resolve(".git"),
+                lib, lib.resolve(".git"),
+                vendor, vendor.resolve(".git"));
+        assertEquals(expected, discovery.discover(List.of(top)));
+        assertFalse(discovery.isDirty());
+        // answered from the cache, and again from a content root inside a submodule
+        assertEquals(expected, discovery.discover(List.of(top)));
+        assertEquals(Map.of(lib, lib.resolve(".git"), vendor, vendor.resolve(".git")), discovery.discover(List.of(lib)));
+    }
+
+    @Test
+    public void submodulePathsOutsideTheWorkTreeAreIgnored() throws IOException {
+        Path top = repo(dir.resolve("top"), ".", "..", "../top");
+        RepoDiscovery discovery = new RepoDiscovery(new HeadReader());
+        assertEquals(Map.of(top, top.resolve(".git")), discovery.discover(List.of(top)));
+    }
+
+    private static Path repo(Path workTree, String... submodules) throws IOException {
+        Files.createDirectories(workTree.resolve(".git"));
+        Files.writeString(workTree.resolve(".git/HEAD"), "ref: refs/heads/main\n");
+        StringBuilder gitmodules = new StringBuilder();
+        for (String path : submodules) {
+            gitmodules.append("[submodule \"").append(path).append("\"]\n\tpath = ").append(path).append('\n');
+        }
+        if (submodules.length > 0) Files.writeString(workTree.resolve(".gitmodules"), gitmodules.toString());
+        return workTree;
+    }
+}
@@ -0,0 +1,30 @@
+package de.rc.branchwarner;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class WatchedGitPathsTest {
+
+    private static final Path GIT_DIR = Path.of("/home/u/refs/proj/.git").toAbsolutePath();
+
+    private static String path(String rel) {
+        return GIT_DIR.resolve(rel).toString().replace('\\', '/');
+    }
+
+    @Test
+    public void refChangeBelowDirectoryNamedRefs() {
+        WatchedGitPaths index = new WatchedGitPaths();
+        index.reset(List.of(GIT_DIR));
+
+        assertEquals(Set.of(GIT_DIR), index.match(path("refs/heads/main")));
+        assertEquals(Set.of(GIT_DIR), index.match(path("refs/heads/refs/nested")));
+        assertEquals(Set.of(GIT_DIR), index.match(path("HEAD")));
+        assertEquals(Set.of(), index.match(GIT_DIR.getParent().resolve("refs/x").toString().replace('\\', '/')));
+        assertEquals(Set.of(), index.match(path("objects/ab/cdef")));
+    }
+}